@@ -0,0 +1,297 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.folio.rest.jaxrs.model.AdmissionClass;
+import org.folio.rest.jaxrs.model.AdmissionStatus;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.folio.rest.tools.utils.TenantTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Admission control per tenant and endpoint class. Each class has a token bucket that limits
+ * the request rate (oriole.admission.CLASS.rate per second, bursts of oriole.admission.CLASS.burst)
+ * and a cap on requests running at once (oriole.admission.CLASS.concurrency). Requests over the
+ * cap wait in a queue of at most oriole.admission.CLASS.queue entries for at most
+ * oriole.admission.CLASS.queue.timeout.ms. An empty bucket answers 429 with Retry-After; a full
+ * queue or a timed-out wait answers 503. A request that holds its slot for longer than
+ * oriole.admission.CLASS.hold.timeout.ms without answering is answered with 503, but keeps its
+ * slot until the handler answers: its statements still run, and releasing the slot early would
+ * let more than the cap run against the database. Guarded statements (see {@link QueryGuard})
+ * time out well before that. The classes are separate so a crawler running searches cannot take
+ * the connections needed by writes or /ezproxy.
+ */
+public final class AdmissionControl {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+  public static final String SEARCH = "search";
+  public static final String ITEM = "item";
+  public static final String WRITE = "write";
+  public static final String EZPROXY = "ezproxy";
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.admission.enabled", true);
+  private static final Map<String, Limits> LIMITS = new ConcurrentHashMap<>();
+  static {
+    LIMITS.put(SEARCH, new Limits(SEARCH, 50, 100, 8, 50, 2000, 30000));
+    LIMITS.put(ITEM, new Limits(ITEM, 200, 400, 16, 100, 2000, 30000));
+    LIMITS.put(WRITE, new Limits(WRITE, 50, 100, 4, 50, 5000, 120000));
+    LIMITS.put(EZPROXY, new Limits(EZPROXY, 5, 10, 2, 10, 10000, 120000));
+  }
+  private static final Map<String, Gate> GATES = new ConcurrentHashMap<>();
+
+  private AdmissionControl() {
+  }
+
+  /**
+   * Runs the handler body once the request is admitted, with a result handler that releases the
+   * slot when the response is handed back. Rejected requests are answered here. The body is timed
+   * as a slice of handlerName by {@link LoopMonitor}. Warm-up requests (see
+   * {@link TenantWarmUp#isWarmUp}) run at once, untimed and without counting against the class.
+   */
+  public static void admit(String endpointClass, String handlerName, Map<String, String> okapiHeaders,
+                           Context vertxContext, Handler<AsyncResult<Response>> asyncResultHandler,
+                           Consumer<Handler<AsyncResult<Response>>> body) {
+    if (TenantWarmUp.isWarmUp(okapiHeaders)) {
+      LoopMonitor.untimed(() -> body.accept(asyncResultHandler));
+      return;
+    }
+    Consumer<Handler<AsyncResult<Response>>> timed = h -> LoopMonitor.run(handlerName, () -> body.accept(h));
+    if (!ENABLED) {
+      timed.accept(asyncResultHandler);
+      return;
+    }
+    String tenantId = TenantTool.tenantId(okapiHeaders);
+    Gate gate = GATES.computeIfAbsent(tenantId + '|' + endpointClass,
+        k -> new Gate(tenantId, LIMITS.get(endpointClass)));
+    gate.enter(vertxContext, asyncResultHandler, timed);
+  }
+
+  /**
+   * Counters of the endpoint classes the tenant has used since start-up.
+   */
+  public static AdmissionStatus status(String tenantId) {
+    List<AdmissionClass> classes = new ArrayList<>();
+    for (Gate gate : GATES.values()) {
+      if (gate.tenantId.equals(tenantId)) {
+        classes.add(gate.status());
+      }
+    }
+    Collections.sort(classes, (a, b) -> a.getEndpointClass().compareTo(b.getEndpointClass()));
+    return new AdmissionStatus().withEnabled(ENABLED).withClasses(classes);
+  }
+
+  private static Response tooManyRequests(long retryAfterSeconds) {
+    return Response.status(429)
+        .header("Retry-After", retryAfterSeconds)
+        .type(MediaType.TEXT_PLAIN)
+        .entity("Too many requests, retry in " + retryAfterSeconds + " s")
+        .build();
+  }
+
+  private static Response unavailable(String message) {
+    return Response.status(503)
+        .header("Retry-After", 1)
+        .type(MediaType.TEXT_PLAIN)
+        .entity(message)
+        .build();
+  }
+
+  private static final class Limits {
+    private final String name;
+    private final double rate;
+    private final double burst;
+    private final int concurrency;
+    private final int queue;
+    private final long queueTimeoutMs;
+    private final long holdTimeoutMs;
+
+    Limits(String name, double rate, double burst, int concurrency, int queue, long queueTimeoutMs,
+           long holdTimeoutMs) {
+      this.name = name;
+      String prefix = "oriole.admission." + name + ".";
+      this.rate = Double.parseDouble(OrioleConfig.get(prefix + "rate", String.valueOf(rate)));
+      this.burst = Double.parseDouble(OrioleConfig.get(prefix + "burst", String.valueOf(burst)));
+      this.concurrency = OrioleConfig.getInt(prefix + "concurrency", concurrency);
+      this.queue = OrioleConfig.getInt(prefix + "queue", queue);
+      this.queueTimeoutMs = OrioleConfig.getLong(prefix + "queue.timeout.ms", queueTimeoutMs);
+      this.holdTimeoutMs = OrioleConfig.getLong(prefix + "hold.timeout.ms", holdTimeoutMs);
+    }
+  }
+
+  /**
+   * State of one tenant and endpoint class. Requests of a tenant arrive on several event loops,
+   * so the state is guarded by the gate's monitor; handlers always run on the request's context.
+   */
+  private static final class Gate {
+    private final String tenantId;
+    private final String name;
+    private final Limits limits;
+    private final String stat;
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private int inFlight;
+    private int admitted;
+    private int queued;
+    private int rejectedRate;
+    private int rejectedBusy;
+    private int timedOut;
+    private int heldTooLong;
+
+    Gate(String tenantId, Limits limits) {
+      this.tenantId = tenantId;
+      this.limits = limits;
+      this.name = limits.name;
+      this.stat = "oriole.admission." + name + ".";
+      this.tokens = limits.burst;
+    }
+
+    void enter(Context context, Handler<AsyncResult<Response>> handler,
+               Consumer<Handler<AsyncResult<Response>>> body) {
+      Response rejection = null;
+      Waiter waiter = null;
+      synchronized (this) {
+        long now = System.nanoTime();
+        tokens = Math.min(limits.burst, tokens + (now - refilledAt) / 1e9 * limits.rate);
+        refilledAt = now;
+        if (tokens < 1) {
+          rejectedRate++;
+          rejection = tooManyRequests((long) Math.ceil((1 - tokens) / limits.rate));
+        } else {
+          tokens -= 1;
+          if (inFlight < limits.concurrency) {
+            inFlight++;
+            admitted++;
+          } else if (waiting.size() < limits.queue) {
+            queued++;
+            Waiter w = new Waiter(context, handler, body, now);
+            // set before the waiter is published, so a release on another thread cancels this timer
+            w.timerId = context.owner().setTimer(limits.queueTimeoutMs, id -> expire(w));
+            waiting.add(w);
+            waiter = w;
+          } else {
+            rejectedBusy++;
+            rejection = unavailable("Too many " + name + " requests in progress, try again later");
+          }
+        }
+      }
+      if (rejection != null) {
+        StatsTracker.addStatElement(stat + "rejected", 0);
+        handler.handle(Future.succeededFuture(rejection));
+      } else if (waiter != null) {
+        StatsTracker.addStatElement(stat + "queued", 0);
+      } else {
+        run(context, handler, body);
+      }
+    }
+
+    private void expire(Waiter waiter) {
+      synchronized (this) {
+        if (!waiting.remove(waiter)) {
+          // admitted in the meantime
+          return;
+        }
+        timedOut++;
+      }
+      StatsTracker.addStatElement(stat + "timeout", (int) limits.queueTimeoutMs);
+      waiter.handler.handle(Future.succeededFuture(
+          unavailable("Waited " + limits.queueTimeoutMs + " ms for a " + name + " slot, try again later")));
+    }
+
+    private void run(Context context, Handler<AsyncResult<Response>> handler,
+                     Consumer<Handler<AsyncResult<Response>>> body) {
+      AtomicBoolean answered = new AtomicBoolean();
+      AtomicBoolean released = new AtomicBoolean();
+      long[] holdTimerId = new long[1];
+      Handler<AsyncResult<Response>> releasing = res -> {
+        if (!released.compareAndSet(false, true)) {
+          return;
+        }
+        context.owner().cancelTimer(holdTimerId[0]);
+        release();
+        if (answered.compareAndSet(false, true)) {
+          handler.handle(res);
+        }
+        // else answered by the hold timer already
+      };
+      holdTimerId[0] = context.owner().setTimer(limits.holdTimeoutMs, id -> {
+        if (!answered.compareAndSet(false, true)) {
+          return;
+        }
+        synchronized (this) {
+          heldTooLong++;
+        }
+        StatsTracker.addStatElement(stat + "held", (int) limits.holdTimeoutMs);
+        LOGGER.warn("A " + name + " request of " + tenantId + " did not answer within "
+            + limits.holdTimeoutMs + " ms, it keeps its slot until it does");
+        handler.handle(Future.succeededFuture(
+            unavailable("No answer within " + limits.holdTimeoutMs + " ms, try again later")));
+      });
+      try {
+        body.accept(releasing);
+      } catch (RuntimeException e) {
+        LOGGER.error("Handler of a " + name + " request failed", e);
+        releasing.handle(Future.failedFuture(e));
+      }
+    }
+
+    private void release() {
+      Waiter next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          inFlight--;
+          return;
+        }
+        // the slot passes to the first waiter; inFlight stays the same
+        admitted++;
+      }
+      Waiter w = next;
+      w.context.owner().cancelTimer(w.timerId);
+      StatsTracker.addStatElement(stat + "wait", (int) ((System.nanoTime() - w.queuedAt) / 1000000));
+      w.context.runOnContext(v -> run(w.context, w.handler, w.body));
+    }
+
+    synchronized AdmissionClass status() {
+      return new AdmissionClass()
+          .withTenant(tenantId)
+          .withEndpointClass(name)
+          .withInFlight(inFlight)
+          .withQueueLength(waiting.size())
+          .withAdmitted(admitted)
+          .withQueued(queued)
+          .withRejectedRate(rejectedRate)
+          .withRejectedBusy(rejectedBusy)
+          .withTimedOut(timedOut)
+          .withHeldTooLong(heldTooLong);
+    }
+  }
+
+  private static final class Waiter {
+    private final Context context;
+    private final Handler<AsyncResult<Response>> handler;
+    private final Consumer<Handler<AsyncResult<Response>>> body;
+    private final long queuedAt;
+    private long timerId;
+
+    Waiter(Context context, Handler<AsyncResult<Response>> handler,
+           Consumer<Handler<AsyncResult<Response>>> body, long queuedAt) {
+      this.context = context;
+      this.handler = handler;
+      this.body = body;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
@@ -13,22 +13,70 @@ import org.z3950.zing.cql.cql2pgjson.SchemaException;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ApiUtil {
+    // table -> schema text -> translator; a translator parses its schema once, when it is built
+    private static final Map<String, Map<String, CQL2PgJSON>> TRANSLATORS = new ConcurrentHashMap<>();
+
     public static CQLWrapper getCQL(String query, int limit, int offset, String table, String schema)
             throws IOException, FieldException, SchemaException {
-        CQL2PgJSON cql2pgJson;
-        if (schema != null) {
-            cql2pgJson = new CQL2PgJSON(table + ".jsonb", schema);
-            //cql2pgJson = new CQL2PgJSON(RESOURCE_TABLE + ".jsonb");
-        } else {
-            cql2pgJson = new CQL2PgJSON(table + ".jsonb");
-        }
-        return new CQLWrapper(cql2pgJson, query)
+        return new CQLWrapper(getTranslator(table, schema), query)
+                .setLimit(new Limit(limit))
+                .setOffset(new Offset(offset));
+    }
+
+    /**
+     * Same as {@link #getCQL}, for resource searches: sortBy title uses the indexed sort key, and
+     * some terms are translated to indexed conditions (see {@link ResourceCQLWrapper}).
+     */
+    public static CQLWrapper getResourceCQL(String query, int limit, int offset, String schema)
+            throws IOException, FieldException, SchemaException {
+        return new ResourceCQLWrapper(getTranslator(OrioleImpl.RESOURCE_TABLE, schema), query)
                 .setLimit(new Limit(limit))
                 .setOffset(new Offset(offset));
     }
 
+    static CQL2PgJSON getTranslator(String table, String schema)
+            throws IOException, FieldException, SchemaException {
+        Map<String, CQL2PgJSON> bySchema = TRANSLATORS.computeIfAbsent(table, t -> new ConcurrentHashMap<>());
+        try {
+            // one translator per table and schema, even when several event loops ask at once
+            return bySchema.computeIfAbsent(schema == null ? "" : schema, key -> {
+                try {
+                    return schema == null ? new CQL2PgJSON(table + ".jsonb") : new CQL2PgJSON(table + ".jsonb", schema);
+                } catch (IOException | FieldException | SchemaException e) {
+                    throw new TranslatorException(e);
+                }
+            });
+        } catch (TranslatorException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof FieldException) {
+                throw (FieldException) cause;
+            }
+            throw (SchemaException) cause;
+        }
+    }
+
+    /**
+     * Carries a checked exception of a translator constructor out of computeIfAbsent.
+     */
+    private static final class TranslatorException extends RuntimeException {
+        TranslatorException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * The text as an SQL string literal, for statements that cannot take it as a parameter.
+     * Assumes standard_conforming_strings, the default since PostgreSQL 9.1.
+     */
+    static String literal(String s) {
+        return "'" + s.replace("'", "''") + "'";
+    }
 
     public static PostgresClient getPostgresClient(Map<String, String> okapiHeaders, Context vertxContext) {
         String tenantId = TenantTool.calculateTenantId(okapiHeaders.get(RestVerticle.OKAPI_HEADER_TENANT));
@@ -0,0 +1,62 @@
+package org.folio.rest.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.folio.rest.jaxrs.model.ResourceCollection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant cache of the database lists shown on campus/library sites. Entries are dropped
+ * when resources or libraries of the tenant change; the TTL only bounds staleness from writes
+ * made by other module instances.
+ */
+public final class AvailabilityCache {
+  private static final long TTL_SECONDS = OrioleConfig.getLong("oriole.availability.cache.ttl", 300);
+  private static final long MAX_ENTRIES = OrioleConfig.getLong("oriole.availability.cache.size", 500);
+  private static final Map<String, Cache<String, ResourceCollection>> CACHES = new ConcurrentHashMap<>();
+  private static final Map<String, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+  private AvailabilityCache() {
+  }
+
+  static String key(String library, int offset, int limit, boolean includeUnrestricted) {
+    return library + '|' + offset + '|' + limit + '|' + includeUnrestricted;
+  }
+
+  public static ResourceCollection get(String tenantId, String key) {
+    return cache(tenantId).getIfPresent(key);
+  }
+
+  /**
+   * Current generation of the tenant's cache. Read it before querying and hand it back to
+   * {@link #put} so a result computed before an invalidation is not stored after it.
+   */
+  public static long generation(String tenantId) {
+    return GENERATIONS.computeIfAbsent(tenantId, t -> new AtomicLong()).get();
+  }
+
+  public static void put(String tenantId, long generation, String key, ResourceCollection value) {
+    if (generation(tenantId) == generation) {
+      cache(tenantId).put(key, value);
+    }
+  }
+
+  public static void invalidate(String tenantId) {
+    GENERATIONS.computeIfAbsent(tenantId, t -> new AtomicLong()).incrementAndGet();
+    Cache<String, ResourceCollection> cache = CACHES.get(tenantId);
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  private static Cache<String, ResourceCollection> cache(String tenantId) {
+    return CACHES.computeIfAbsent(tenantId, t -> CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+        .build());
+  }
+}
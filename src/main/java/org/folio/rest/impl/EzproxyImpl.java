@@ -2,12 +2,14 @@ package org.folio.rest.impl;
 
 import com.google.common.net.InternetDomainName;
 import io.vertx.core.*;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.folio.rest.jaxrs.model.*;
 import org.folio.rest.jaxrs.resource.Ezproxy;
 import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.utils.TenantTool;
 import org.folio.rest.tools.utils.ValidationHelper;
 import org.json.JSONArray;
 import org.slf4j.Logger;
@@ -27,10 +29,11 @@ public class EzproxyImpl implements Ezproxy {
   private static final String ID_FIELD_NAME = "id";
   private static final String RESOURCE_SCHEMA_PATH = "ramls/schemas/resource.json";
   private static final String SUBJECT_SCHEMA_PATH = "ramls/schemas/subject.json";
-  private static final List<String> AVOID_DOMAINS = Arrays.asList("jhu.edu","library.jhu.edu","mse.jhu.edu","ac.uk","co.uk");
-  private static final List<String> OMIT_DATABASES = Arrays.asList("JHU05048","JHU04485","JHU02980","JHU03588","JHU04456","JHU03659","JHU04935");
-  private String RESOURCE_SCHEMA = null;
-  private String SUBJECT_SCHEMA = null;
+  static final String PROXIED_RESOURCES_SQL = "SELECT jsonb -> 'url' as url, jsonb ->'altId' as altId, "
+      + "jsonb ->'title' as title, jsonb -> 'availability' as availability FROM " + RESOURCE_TABLE
+      + " where jsonb ->> 'proxy' = 'true' ORDER BY jsonb ->> 'altId'";
+  private static String RESOURCE_SCHEMA = null;
+  private static String SUBJECT_SCHEMA = null;
 
   public EzproxyImpl(Vertx vertx, String tennantId) {
     if (RESOURCE_SCHEMA == null || SUBJECT_SCHEMA == null) {
@@ -62,81 +65,141 @@ public class EzproxyImpl implements Ezproxy {
           Map<String, String> okapiHeaders,
           Handler<AsyncResult<Response>> asyncResultHandler,
           Context vertxContext) {
-    vertxContext.runOnContext(v -> {  // TODO: Is this necessary?
-      PostgresClient client = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
-      String sql = "SELECT jsonb -> 'url' as url, jsonb ->'altId' as altId, jsonb ->'title' as title, " +
-              "jsonb -> 'availability' as availability FROM " + RESOURCE_TABLE + " where jsonb ->> 'proxy' = 'true'";
-      client.select(sql, (reply) -> {
-        if (reply.succeeded()) {
-          List<JsonArray> results = reply.result().getResults();
-          List<Stanzas> stanzas = new ArrayList<>();
-
-          //loop through results build a list of unique domains
-          //also extract the altid, title and availabilities for the first unique value
-          for (JsonArray result : results) {
-            //TODO get by field name not position
-            String url = cleanString(result.getString(0));
-            String altId = cleanString(result.getString(1));
-            String title = cleanString(result.getString(2));
-            String availability = result.getString(3);
-            JSONArray availabilityJson = new JSONArray(availability);
-            List<String> availabilities = new ArrayList<>();
-            Stanzas stanza = new Stanzas();
+    AdmissionControl.admit(AdmissionControl.EZPROXY, "getEzproxy",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> getEzproxyFile(okapiHeaders, h, vertxContext));
+  }
 
-            //get and set url protocol and domain (removing first subdomain)
-            try {
-              stanza = getDomain(url,stanza);
-              if (AVOID_DOMAINS.contains(stanza.getDomain())){
-                continue;
+  private void getEzproxyFile(
+          Map<String, String> okapiHeaders,
+          Handler<AsyncResult<Response>> asyncResultHandler,
+          Context vertxContext) {
+    vertxContext.runOnContext(LoopMonitor.wrap(v -> {  // TODO: Is this necessary?
+      EzproxyRuleMatcher.get(vertxContext.owner(), TenantTool.tenantId(okapiHeaders), rules -> {
+        if (rules.failed()) {
+          ValidationHelper.handleError(rules.cause(), asyncResultHandler);
+          return;
+        }
+        // building the file parses every URL of the catalog on the event loop
+        ReadRouting.select(okapiHeaders, vertxContext, QueryGuard.EZPROXY, PROXIED_RESOURCES_SQL, null,
+            LoopMonitor.wrap("getEzproxy", reply -> {
+              if (reply.failed()) {
+                QueryGuard.handleError(reply.cause(), QueryGuard.EZPROXY, asyncResultHandler);
+                return;
+              }
+              //write the response text
+              String response;
+              try {
+                response = buildEzproxyFile(reply.result().getResults(), rules.result());
+              } catch (IOException e) {
+                LOGGER.error("Building the EZProxy config failed", e);
+                asyncResultHandler.handle(Future.succeededFuture(
+                        GetEzproxyResponse.respond500WithTextPlain(e.getMessage())));
+                return;
               }
-            } catch (MalformedURLException e) {
-              e.printStackTrace();
-            }
+              asyncResultHandler.handle(
+                      Future.succeededFuture(GetEzproxyResponse.respond200WithTextPlain(response)));
+            }));
+      });
+    }));
+  }
 
-            //convert availablities/restrictions json to list
-            for (Object item : availabilityJson) {
-              availabilities.add((String) item);
-            }
+  @Override
+  public void getEzproxyRules(
+          Map<String, String> okapiHeaders,
+          Handler<AsyncResult<Response>> asyncResultHandler,
+          Context vertxContext) {
+    EzproxyRuleMatcher.get(vertxContext.owner(), TenantTool.tenantId(okapiHeaders), reply -> {
+      if (reply.succeeded()) {
+        asyncResultHandler.handle(Future.succeededFuture(
+                GetEzproxyRulesResponse.respond200WithApplicationJson(reply.result().getSource())));
+      } else {
+        ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+      }
+    });
+  }
 
-            //add stanza object to the list if the base domain is not already added
-            boolean domainPresent = false;
-            for (Stanzas s : stanzas) {
-              if (s.getDomain().contains(stanza.getDomain())) {
-                domainPresent = true;
-                break;
-              }
-            }
-            if (!domainPresent) {
-              stanzas.add(createStanza(stanza, altId, title, availabilities));
-            }
-          }
+  @Override
+  public void putEzproxyRules(
+          EzproxyRules entity,
+          Map<String, String> okapiHeaders,
+          Handler<AsyncResult<Response>> asyncResultHandler,
+          Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
+    String tenantId = TenantTool.tenantId(okapiHeaders);
+    JsonArray params = new JsonArray()
+            .add(EzproxyRuleMatcher.RULES_ID)
+            .add(Json.encode(entity));
+    ApiUtil.getPostgresClient(okapiHeaders, vertxContext).select(EzproxyRuleMatcher.UPSERT_SQL, params, reply -> {
+      if (reply.succeeded()) {
+        EzproxyRuleMatcher.invalidate(tenantId);
+        EzproxyRuleMatcher.publishChanged(vertxContext.owner(), tenantId);
+        asyncResultHandler.handle(Future.succeededFuture(PutEzproxyRulesResponse.respond204()));
+      } else {
+        ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+      }
+    });
+  }
 
-          //loop through unique stanza subdomains add url and alitid for any item containing subdomain
-          stanzas = setDatabaseUrlsAndIds(stanzas, results);
+  /**
+   * The EZProxy config for the rows of {@link #PROXIED_RESOURCES_SQL}; shared by the endpoint
+   * and {@link EzproxyPublisher}.
+   */
+  public String buildEzproxyFile(List<JsonArray> results, EzproxyRuleMatcher rules) throws IOException {
+    List<Stanzas> stanzas = new ArrayList<>();
 
-          //write the response text
-          String response = null;
-          try {
-            response = writeEzproxyFile(stanzas);
-            System.out.println(response);
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
+    //loop through results build a list of unique domains
+    //also extract the altid, title and availabilities for the first unique value
+    for (JsonArray result : results) {
+      //TODO get by field name not position
+      String url = cleanString(result.getString(0));
+      String altId = cleanString(result.getString(1));
+      String title = cleanString(result.getString(2));
+      String availability = result.getString(3);
+      JSONArray availabilityJson = new JSONArray(availability);
+      List<String> availabilities = new ArrayList<>();
+      Stanzas stanza = new Stanzas();
 
-          asyncResultHandler.handle(
-                  Future.succeededFuture(GetEzproxyResponse.respond200WithTextPlain(response)));
-        } else {
-          ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+      //get and set url protocol and domain (removing first subdomain)
+      try {
+        stanza = getDomain(url,stanza);
+        if (rules.avoids(getSubdomain(url))){
+          continue;
         }
-      });
-    });
+      } catch (MalformedURLException e) {
+        e.printStackTrace();
+      }
+
+      //convert availablities/restrictions json to list
+      for (Object item : availabilityJson) {
+        availabilities.add((String) item);
+      }
+
+      //add stanza object to the list if the base domain is not already added
+      boolean domainPresent = false;
+      for (Stanzas s : stanzas) {
+        if (s.getDomain().contains(stanza.getDomain())) {
+          domainPresent = true;
+          break;
+        }
+      }
+      if (!domainPresent) {
+        stanzas.add(createStanza(stanza, altId, title, availabilities, rules));
+      }
+    }
+
+    //loop through unique stanza subdomains add url and alitid for any item containing subdomain
+    stanzas = setDatabaseUrlsAndIds(stanzas, results);
+
+    return writeEzproxyFile(stanzas);
   }
 
-  public Stanzas createStanza(Stanzas stanza, String altId, String title, List<String> availabilities) {
+  public Stanzas createStanza(Stanzas stanza, String altId, String title, List<String> availabilities,
+                              EzproxyRuleMatcher rules) {
     stanza.setAltid(altId);
     stanza.setTitle(title);
     stanza.setAvailability(availabilities);
-    if (OMIT_DATABASES.contains(altId)){
+    if (rules.omits(altId)){
       stanza.setOmitDb(true);
     }
     else {
@@ -192,8 +255,7 @@ public class EzproxyImpl implements Ezproxy {
       //System.out.println("host = " + aURL.getHost());
       protocol = aURL.getProtocol();
       domain =  aURL.getHost();
-      System.out.println("Host: " + aURL.getHost());
-      System.out.println("Original: " + domain);
+      LOGGER.debug("Host: {}", domain);
       int count = StringUtils.countMatches(domain, ".");
       //if count of . is > than 1
       if (count>1) {
@@ -201,11 +263,11 @@ public class EzproxyImpl implements Ezproxy {
         //domain = domain.substring(domain.lastIndexOf("."));
         try {
           domain =InternetDomainName.from(new URL(url).getHost()).topPrivateDomain().toString();
-          System.out.println("Top domain: " + domain);
+          LOGGER.debug("Top domain: {}", domain);
         } catch (MalformedURLException e) {
-          System.out.println("URL malformed - possible IP address");
+          LOGGER.debug("URL malformed - possible IP address: {}", url);
         } catch (IllegalArgumentException e) {
-          System.out.println("Unable to parse - possible IP address");
+          LOGGER.debug("Unable to parse - possible IP address: {}", url);
         }
 
       }
@@ -0,0 +1,283 @@
+package org.folio.rest.impl;
+
+import com.google.common.hash.Hashing;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.EzproxyPublisherStatus;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the EZProxy config of one tenant (oriole.ezproxy.publish.tenant) in a local file
+ * (oriole.ezproxy.publish.path) for the EZProxy hosts to read. The config is generated at start-up
+ * and again oriole.ezproxy.publish.debounce.ms after the last change of resources or rules, but at most
+ * oriole.ezproxy.publish.max.delay.ms after the first one of a burst. The file is only replaced
+ * when the content hash changed, by writing a temporary file next to it and renaming it over
+ * the old one, so a reader never sees a partial config.
+ */
+public final class EzproxyPublisher {
+  private static final Logger LOGGER = LoggerFactory.getLogger(EzproxyPublisher.class);
+  private static final String PATH = OrioleConfig.get("oriole.ezproxy.publish.path", null);
+  private static final String TENANT = OrioleConfig.get("oriole.ezproxy.publish.tenant", null);
+  private static final long DEBOUNCE_MS = OrioleConfig.getLong("oriole.ezproxy.publish.debounce.ms", 5000);
+  private static final long MAX_DELAY_MS = OrioleConfig.getLong("oriole.ezproxy.publish.max.delay.ms", 60000);
+  // the publisher of the configured tenant, once started
+  private static volatile EzproxyPublisher instance;
+
+  private final Vertx vertx;
+  private final Context context;
+  private final String tenant;
+  private final Path target;
+  private final long debounceMs;
+  private final long maxDelayMs;
+  // generates the content of the file; called on the context
+  private final Consumer<Handler<AsyncResult<String>>> generator;
+  private final AtomicInteger regenerations = new AtomicInteger();
+  private final AtomicInteger writes = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private volatile Integer lastDurationMs;
+  private volatile String lastHash;
+  private volatile Date lastWritten;
+  private volatile String lastError;
+  // only touched on the context
+  private long timerId = -1;
+  private long firstChangeMs;
+  private boolean running;
+  private boolean rerun;
+
+  EzproxyPublisher(Vertx vertx, Context context, String tenant, Path target, long debounceMs, long maxDelayMs,
+                   Consumer<Handler<AsyncResult<String>>> generator) {
+    this.vertx = vertx;
+    this.context = context;
+    this.tenant = tenant;
+    this.target = target.toAbsolutePath();
+    this.debounceMs = debounceMs;
+    this.maxDelayMs = maxDelayMs;
+    this.generator = generator;
+  }
+
+  public static boolean enabled() {
+    return PATH != null && TENANT != null;
+  }
+
+  /**
+   * Publishes once and then after every change of the tenant's resources. Does nothing unless
+   * both the path and the tenant are configured.
+   */
+  public static void start(Vertx vertx, Context context) {
+    if (PATH == null) {
+      return;
+    }
+    if (TENANT == null) {
+      LOGGER.warn("oriole.ezproxy.publish.path is set but oriole.ezproxy.publish.tenant is not, not publishing");
+      return;
+    }
+    LOGGER.info("Publishing the EZProxy config of tenant " + TENANT + " to " + PATH);
+    EzproxyImpl ezproxy = new EzproxyImpl(vertx, TENANT);
+    EzproxyPublisher publisher = new EzproxyPublisher(vertx, context, TENANT, Paths.get(PATH),
+        DEBOUNCE_MS, MAX_DELAY_MS, h -> generate(vertx, context, ezproxy, h));
+    instance = publisher;
+    context.runOnContext(v -> {
+      Handler<String> onChange = tenantId -> {
+        if (TENANT.equals(tenantId)) {
+          publisher.changed();
+        }
+      };
+      ResourceEvents.onChanged(vertx, onChange);
+      EzproxyRuleMatcher.onChanged(vertx, onChange);
+      publisher.publish();
+    });
+  }
+
+  public static EzproxyPublisherStatus status() {
+    EzproxyPublisher publisher = instance;
+    if (publisher == null) {
+      return new EzproxyPublisherStatus()
+          .withEnabled(enabled())
+          .withTenant(TENANT)
+          .withPath(PATH)
+          .withRegenerations(0)
+          .withWrites(0)
+          .withSkipped(0)
+          .withFailures(0);
+    }
+    return publisher.currentStatus();
+  }
+
+  EzproxyPublisherStatus currentStatus() {
+    return new EzproxyPublisherStatus()
+        .withEnabled(true)
+        .withTenant(tenant)
+        .withPath(target.toString())
+        .withRegenerations(regenerations.get())
+        .withWrites(writes.get())
+        .withSkipped(skipped.get())
+        .withFailures(failures.get())
+        .withLastDurationMs(lastDurationMs)
+        .withLastHash(lastHash)
+        .withLastWritten(lastWritten)
+        .withLastError(lastError);
+  }
+
+  /**
+   * The config of the tenant, from the primary: a lagging replica could miss the change that
+   * triggered the run. The file is built on a worker thread.
+   */
+  private static void generate(Vertx vertx, Context context, EzproxyImpl ezproxy, Handler<AsyncResult<String>> handler) {
+    EzproxyRuleMatcher.get(vertx, TENANT, rules -> {
+      if (rules.failed()) {
+        context.runOnContext(v -> handler.handle(Future.failedFuture(rules.cause())));
+        return;
+      }
+      PostgresClient.getInstance(vertx, TENANT).select(EzproxyImpl.PROXIED_RESOURCES_SQL, reply -> {
+        if (reply.failed()) {
+          context.runOnContext(v -> handler.handle(Future.failedFuture(reply.cause())));
+          return;
+        }
+        List<JsonArray> rows = reply.result().getResults();
+        context.<String>executeBlocking(
+            future -> {
+              try {
+                future.complete(ezproxy.buildEzproxyFile(rows, rules.result()));
+              } catch (Exception e) {
+                future.fail(e);
+              }
+            },
+            true,
+            handler);
+      });
+    });
+  }
+
+  /**
+   * Schedules a run after a change; call on the context.
+   */
+  void changed() {
+    long now = System.currentTimeMillis();
+    if (timerId >= 0) {
+      if (now + debounceMs - firstChangeMs > maxDelayMs) {
+        // keep the pending timer, so a steady stream of changes still gets published
+        return;
+      }
+      vertx.cancelTimer(timerId);
+    } else {
+      firstChangeMs = now;
+    }
+    timerId = vertx.setTimer(debounceMs, id -> {
+      timerId = -1;
+      publish();
+    });
+  }
+
+  /**
+   * Generates the config and replaces the file when it changed; call on the context.
+   */
+  void publish() {
+    if (running) {
+      rerun = true;
+      return;
+    }
+    running = true;
+    long start = System.nanoTime();
+    generator.accept(generated -> {
+      if (generated.failed()) {
+        finish(start, Future.failedFuture(generated.cause()));
+        return;
+      }
+      context.<Boolean>executeBlocking(
+          future -> {
+            try {
+              future.complete(writeIfChanged(generated.result()));
+            } catch (Exception e) {
+              future.fail(e);
+            }
+          },
+          true,
+          res -> finish(start, res));
+    });
+  }
+
+  private void finish(long start, AsyncResult<Boolean> res) {
+    int ms = (int) ((System.nanoTime() - start) / 1000000);
+    lastDurationMs = ms;
+    regenerations.incrementAndGet();
+    StatsTracker.addStatElement("oriole.ezproxy.publish.regenerate", ms);
+    if (res.failed()) {
+      failures.incrementAndGet();
+      lastError = res.cause().getMessage();
+      LOGGER.error("Publishing the EZProxy config to " + target + " failed", res.cause());
+    } else if (res.result()) {
+      writes.incrementAndGet();
+      StatsTracker.addStatElement("oriole.ezproxy.publish.write", ms);
+      LOGGER.info("EZProxy config " + target + " updated in " + ms + " ms");
+    } else {
+      skipped.incrementAndGet();
+      StatsTracker.addStatElement("oriole.ezproxy.publish.skipped", ms);
+    }
+    running = false;
+    if (rerun) {
+      rerun = false;
+      changed();
+    }
+  }
+
+  /**
+   * Replaces the file when the content differs from what was last published. Blocking.
+   */
+  private boolean writeIfChanged(String content) throws IOException {
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    String hash = Hashing.sha256().hashBytes(bytes).toString();
+    if (lastHash == null && Files.isRegularFile(target)) {
+      // after a restart, compare with the file left by the previous run
+      lastHash = Hashing.sha256().hashBytes(Files.readAllBytes(target)).toString();
+    }
+    if (hash.equals(lastHash)) {
+      return false;
+    }
+    Path dir = target.getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
+    try {
+      try {
+        Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-r--r--"));
+      } catch (UnsupportedOperationException e) {
+        // not a POSIX file system; keep the default permissions
+      }
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    lastHash = hash;
+    lastWritten = new Date();
+    return true;
+  }
+}
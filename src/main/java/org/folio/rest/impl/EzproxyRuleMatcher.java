@@ -0,0 +1,185 @@
+package org.folio.rest.impl;
+
+import com.google.common.net.InternetDomainName;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.EzproxyRules;
+import org.folio.rest.persist.PostgresClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The EZProxy rules of a tenant, stored in the ezproxy_rules table and compiled for matching:
+ * avoided domains into a trie over the reversed host labels, so a rule also covers every
+ * subdomain, and omitted altIds into a hash set. A public suffix such as co.uk only matches that
+ * host itself, as it did before the rules were stored, rather than every domain registered under
+ * it. Compiled rules are cached per tenant, dropped
+ * when the rules are changed through this instance and reloaded after oriole.ezproxy.rules.ttl
+ * seconds to pick up changes made through other instances.
+ */
+public final class EzproxyRuleMatcher {
+  private static final Logger LOGGER = LoggerFactory.getLogger(EzproxyRuleMatcher.class);
+  public static final String RULES_CHANGED = "org.folio.oriole.ezproxy.rules.changed";
+  public static final String RULES_TABLE = "ezproxy_rules";
+  // the table holds a single row; ezproxy_rules.sql inserts it with the rules that used to be hard-coded
+  public static final String RULES_ID = "7e3f1a52-4c2b-4d6e-9a41-0c5b8e2d9f10";
+  static final String SELECT_SQL = "SELECT jsonb::text FROM " + RULES_TABLE + " WHERE id = ?::uuid";
+  static final String UPSERT_SQL = "INSERT INTO " + RULES_TABLE + " (id, jsonb) VALUES (?::uuid, ?::jsonb) "
+      + "ON CONFLICT (id) DO UPDATE SET jsonb = EXCLUDED.jsonb RETURNING jsonb::text";
+  private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(OrioleConfig.getLong("oriole.ezproxy.rules.ttl", 60));
+  private static final Map<String, EzproxyRuleMatcher> CACHE = new ConcurrentHashMap<>();
+  private static final Map<String, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+  private final EzproxyRules source;
+  private final Node avoidDomains = new Node();
+  private final Set<String> omitDatabases;
+  private final long loadedAt = System.nanoTime();
+
+  EzproxyRuleMatcher(EzproxyRules source) {
+    this.source = source;
+    for (String domain : source.getAvoidDomains()) {
+      String[] labels = labels(domain);
+      if (labels.length == 0) {
+        continue;
+      }
+      Node node = avoidDomains;
+      for (int i = labels.length - 1; i >= 0; i--) {
+        node = node.children.computeIfAbsent(labels[i], l -> new Node());
+      }
+      if (isPublicSuffix(labels)) {
+        node.exact = true;
+      } else {
+        node.terminal = true;
+      }
+    }
+    Set<String> omit = new HashSet<>();
+    for (String altId : source.getOmitDatabases()) {
+      omit.add(altId.trim());
+    }
+    this.omitDatabases = Collections.unmodifiableSet(omit);
+  }
+
+  public EzproxyRules getSource() {
+    return source;
+  }
+
+  /**
+   * True when the host is an avoided domain or a subdomain of one that is not a public suffix.
+   */
+  public boolean avoids(String host) {
+    if (host == null) {
+      return false;
+    }
+    String[] labels = labels(host);
+    Node node = avoidDomains;
+    for (int i = labels.length - 1; i >= 0; i--) {
+      node = node.children.get(labels[i]);
+      if (node == null) {
+        return false;
+      }
+      if (node.terminal || (i == 0 && node.exact)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean omits(String altId) {
+    return altId != null && omitDatabases.contains(altId);
+  }
+
+  /**
+   * The compiled rules of the tenant, loaded from the primary when not cached or expired.
+   */
+  public static void get(Vertx vertx, String tenantId, Handler<AsyncResult<EzproxyRuleMatcher>> handler) {
+    EzproxyRuleMatcher cached = CACHE.get(tenantId);
+    if (cached != null && System.nanoTime() - cached.loadedAt < TTL_NANOS) {
+      handler.handle(Future.succeededFuture(cached));
+      return;
+    }
+    long generation = generation(tenantId).get();
+    JsonArray params = new JsonArray().add(RULES_ID);
+    PostgresClient.getInstance(vertx, tenantId).select(SELECT_SQL, params, reply -> {
+      if (reply.failed()) {
+        handler.handle(Future.failedFuture(reply.cause()));
+        return;
+      }
+      List<JsonArray> rows = reply.result().getResults();
+      EzproxyRules source = rows.isEmpty()
+          ? new EzproxyRules()
+          : Json.decodeValue(rows.get(0).getString(0), EzproxyRules.class);
+      EzproxyRuleMatcher rules = new EzproxyRuleMatcher(source);
+      if (generation(tenantId).get() == generation) {
+        // not cached when the rules changed while they were loaded
+        CACHE.put(tenantId, rules);
+      }
+      LOGGER.info("Loaded " + source.getAvoidDomains().size() + " avoided domain(s) and "
+          + source.getOmitDatabases().size() + " omitted database(s) for tenant " + tenantId);
+      handler.handle(Future.succeededFuture(rules));
+    });
+  }
+
+  public static void invalidate(String tenantId) {
+    generation(tenantId).incrementAndGet();
+    CACHE.remove(tenantId);
+  }
+
+  private static AtomicLong generation(String tenantId) {
+    return GENERATIONS.computeIfAbsent(tenantId, t -> new AtomicLong());
+  }
+
+  public static void publishChanged(Vertx vertx, String tenantId) {
+    vertx.eventBus().publish(RULES_CHANGED, tenantId);
+  }
+
+  public static MessageConsumer<String> onChanged(Vertx vertx, Handler<String> handler) {
+    return vertx.eventBus().<String>consumer(RULES_CHANGED, message -> handler.handle(message.body()));
+  }
+
+  private static String[] labels(String domain) {
+    String d = domain.trim().toLowerCase(Locale.ROOT);
+    if (d.startsWith("*.")) {
+      d = d.substring(2);
+    }
+    while (d.startsWith(".")) {
+      d = d.substring(1);
+    }
+    while (d.endsWith(".")) {
+      d = d.substring(0, d.length() - 1);
+    }
+    return d.isEmpty() ? new String[0] : d.split("\\.");
+  }
+
+  private static boolean isPublicSuffix(String[] labels) {
+    try {
+      return InternetDomainName.from(String.join(".", labels)).isPublicSuffix();
+    } catch (IllegalArgumentException e) {
+      // not a domain name, such as an IP address
+      return false;
+    }
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    // covers the domain and its subdomains
+    private boolean terminal;
+    // covers the domain only
+    private boolean exact;
+  }
+}
@@ -1,6 +1,8 @@
 package org.folio.rest.impl;
 
 import io.vertx.core.*;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import org.apache.commons.io.IOUtils;
 import org.folio.okapi.common.ErrorType;
 import org.folio.okapi.common.ExtendedAsyncResult;
@@ -9,10 +11,9 @@ import org.folio.okapi.common.Success;
 import org.folio.rest.jaxrs.model.Errors;
 import org.folio.rest.jaxrs.model.Library;
 import org.folio.rest.jaxrs.model.LibraryCollection;
+import org.folio.rest.jaxrs.model.Resource;
+import org.folio.rest.jaxrs.model.ResourceCollection;
 import org.folio.rest.jaxrs.resource.OrioleLibraries;
-import org.folio.rest.persist.Criteria.Criteria;
-import org.folio.rest.persist.Criteria.Criterion;
-import org.folio.rest.persist.PgExceptionUtil;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.persist.cql.CQLWrapper;
 import org.folio.rest.tools.messages.MessageConsts;
@@ -25,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.core.Response;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -35,7 +37,12 @@ public class LibrariesImpl implements OrioleLibraries {
     private static final String ID_FIELD_NAME = "id";
     private static final String LIBRARY_SCHEMA_NAME = "ramls/schemas/library.json";
     private static final String LIBRARY_PREFIX = "/oriole-libraries/";
-    private String LIBRARY_SCHEMA = null;
+    private static final String AVAILABLE_AT = " WHERE jsonb->'availability' @> jsonb_build_array(?::text)";
+    private static final String AVAILABLE_EVERYWHERE = " OR coalesce(jsonb->'availability', '[]'::jsonb) = '[]'::jsonb";
+    private static final String DATABASES_SQL = "SELECT " + OrioleImpl.PUBLIC_JSONB + "::text FROM " + OrioleImpl.RESOURCE_TABLE + "%s"
+            + " ORDER BY " + TitleSortCQLWrapper.SORT_COLUMN + " LIMIT ? OFFSET ?";
+    private static final String DATABASES_COUNT_SQL = "SELECT count(*) FROM " + OrioleImpl.RESOURCE_TABLE + "%s";
+    private static String LIBRARY_SCHEMA = null;
     private final Messages messages = Messages.getInstance();
 
     public LibrariesImpl(Vertx vertx, String tennantId) {
@@ -66,7 +73,18 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Handler<AsyncResult<Response>> asyncResultHandler,
             Context vertxContext) {
-        PostgresClient postgresClient = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
+        if (LibraryRegistry.answers(query)) {
+            LibraryRegistry.libraries(okapiHeaders, vertxContext, LoopMonitor.wrap("getOrioleLibraries", reply -> {
+                if (reply.succeeded()) {
+                    asyncResultHandler.handle(Future.succeededFuture(GetOrioleLibrariesResponse
+                            .respond200WithApplicationJson(LibraryRegistry.page(reply.result(), query, offset, limit))));
+                } else {
+                    ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+                }
+            }));
+            return;
+        }
+        long start = System.nanoTime();
         CQLWrapper cql;
         try {
             cql = ApiUtil.getCQL(query, limit, offset, LIBRARY_TABLE, LIBRARY_SCHEMA);
@@ -75,8 +93,9 @@ public class LibrariesImpl implements OrioleLibraries {
             asyncResultHandler.handle(Future.failedFuture(e));
             return;
         }
-        postgresClient.get(LIBRARY_TABLE, Library.class, new String[] {"*"}, cql, true, false,
-                reply -> {
+        ReadRouting.get(okapiHeaders, vertxContext, LIBRARY_TABLE, Library.class, "jsonb", cql, null,
+                LoopMonitor.wrap("getOrioleLibraries", reply -> {
+            QueryAnalytics.record(okapiHeaders, LIBRARY_TABLE, query, start);
             if (reply.succeeded()) {
                 LibraryCollection libraries = new LibraryCollection();
                 List<Library> libraryList = reply.result().getResults();
@@ -88,7 +107,7 @@ public class LibrariesImpl implements OrioleLibraries {
             } else {
                 ValidationHelper.handleError(reply.cause(), asyncResultHandler);
             }
-        });
+        }));
     }
 
     @Override
@@ -98,6 +117,7 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Handler<AsyncResult<Response>> asyncResultHandler,
             Context vertxContext) {
+        ReadRouting.recordWrite(okapiHeaders);
         String id = entity.getId();
         if (id == null || id.isEmpty()) {
             entity.setId(UUID.randomUUID().toString());
@@ -106,6 +126,7 @@ public class LibrariesImpl implements OrioleLibraries {
         vertxContext.runOnContext(v ->
                 postgresClient.save(LIBRARY_TABLE, id, entity, reply -> {
                     if (reply.succeeded()) {
+                        LibraryRegistry.invalidate(TenantTool.tenantId(okapiHeaders));
                         String ret = reply.result();
                         entity.setId(ret);
                         OutStream stream = new OutStream();
@@ -126,6 +147,7 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Handler<AsyncResult<Response>> asyncResultHandler,
             Context vertxContext) {
+        ReadRouting.recordWrite(okapiHeaders);
         String tennantId = TenantTool.tenantId(okapiHeaders);
         try {
             vertxContext.runOnContext(v -> {
@@ -133,6 +155,8 @@ public class LibrariesImpl implements OrioleLibraries {
                 postgresClient.mutate(String.format("DELETE FROM %s_%s.%s", tennantId, "mod_oriole", LIBRARY_TABLE),
                         reply -> {
                     if (reply.succeeded()) {
+                        LibraryRegistry.invalidate(tennantId);
+                        AvailabilityCache.invalidate(tennantId);
                         asyncResultHandler.handle(Future.succeededFuture(DeleteOrioleLibrariesResponse.noContent().build()));
                     } else {
                         asyncResultHandler.handle(Future.succeededFuture(
@@ -183,11 +207,14 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Handler<AsyncResult<Response>> asyncResultHandler,
             Context vertxContext) {
-        getOneLibrary(libraryId, okapiHeaders, vertxContext, res -> {
+        ReadRouting.recordWrite(okapiHeaders);
+        RecordLookup.exists(okapiHeaders, vertxContext, LIBRARY_TABLE, "Library", libraryId, res -> {
             if (res.succeeded()) {
                 ApiUtil.getPostgresClient(okapiHeaders, vertxContext).delete(LIBRARY_TABLE, libraryId, reply -> {
                     if (reply.succeeded()) {
                         if (reply.result().getUpdated() == 1) {
+                            LibraryRegistry.invalidate(TenantTool.tenantId(okapiHeaders));
+                            AvailabilityCache.invalidate(TenantTool.tenantId(okapiHeaders));
                             asyncResultHandler.handle(Future.succeededFuture(DeleteOrioleLibrariesByLibraryIdResponse.respond204()));
                         } else {
                             LOGGER.error(messages.getMessage(lang, MessageConsts.DeletedCountError, 1,
@@ -226,6 +253,7 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Handler<AsyncResult<Response>> asyncResultHandler,
             Context vertxContext) {
+        ReadRouting.recordWrite(okapiHeaders);
         if (entity.getId() == null) {
             entity.setId(libraryId);
             LOGGER.debug("No ID in the library. Take the one from the link");
@@ -235,9 +263,8 @@ public class LibrariesImpl implements OrioleLibraries {
             asyncResultHandler.handle(Future.succeededFuture(PutOrioleLibrariesByLibraryIdResponse.respond422WithApplicationJson(valErr)));
             return;
         }
-        getOneLibrary(libraryId, okapiHeaders, vertxContext, res -> {
+        RecordLookup.exists(okapiHeaders, vertxContext, LIBRARY_TABLE, "Library", libraryId, res -> {
             if (res.succeeded()) {
-                Library oldLibrary = res.result();
                 ApiUtil.getPostgresClient(okapiHeaders, vertxContext).update(LIBRARY_TABLE, entity, libraryId, reply -> {
                     if (reply.succeeded()) {
                         if (reply.result().getUpdated() == 0) {
@@ -245,6 +272,8 @@ public class LibrariesImpl implements OrioleLibraries {
                                     PutOrioleLibrariesByLibraryIdResponse.respond500WithTextPlain(
                                             messages.getMessage(lang, MessageConsts.NoRecordsUpdated))));
                         } else {
+                            LibraryRegistry.invalidate(TenantTool.tenantId(okapiHeaders));
+                            AvailabilityCache.invalidate(TenantTool.tenantId(okapiHeaders));
                             asyncResultHandler.handle(Future.succeededFuture(
                                     PutOrioleLibrariesByLibraryIdResponse.respond204()));
                         }
@@ -269,8 +298,74 @@ public class LibrariesImpl implements OrioleLibraries {
         });
     }
 
+    @Override
+    public void getOrioleLibrariesDatabasesByLibraryId(
+            String libraryId,
+            boolean includeUnrestricted,
+            int offset,
+            int limit,
+            Map<String, String> okapiHeaders,
+            Handler<AsyncResult<Response>> asyncResultHandler,
+            Context vertxContext) {
+        String tenantId = TenantTool.tenantId(okapiHeaders);
+        String key = AvailabilityCache.key(libraryId, offset, limit, includeUnrestricted);
+        ResourceCollection cached = AvailabilityCache.get(tenantId, key);
+        if (cached != null) {
+            asyncResultHandler.handle(Future.succeededFuture(
+                    GetOrioleLibrariesDatabasesByLibraryIdResponse.respond200WithApplicationJson(cached)));
+            return;
+        }
+        long generation = AvailabilityCache.generation(tenantId);
+        // the selects below are issued from this slice, so their callbacks are timed under the same name
+        getOneLibrary(libraryId, okapiHeaders, vertxContext, LoopMonitor.wrap("getOrioleLibrariesDatabasesByLibraryId", res -> {
+            if (res.failed()) {
+                switch (res.getType()) {
+                    case NOT_FOUND:
+                        asyncResultHandler.handle(Future.succeededFuture(GetOrioleLibrariesDatabasesByLibraryIdResponse
+                                .respond404WithTextPlain(res.cause().getMessage())));
+                        break;
+                    case USER:
+                        asyncResultHandler.handle(Future.succeededFuture(GetOrioleLibrariesDatabasesByLibraryIdResponse
+                                .respond400WithTextPlain(res.cause().getMessage())));
+                        break;
+                    default:
+                        ValidationHelper.handleError(res.cause(), asyncResultHandler);
+                }
+                return;
+            }
+            String where = includeUnrestricted ? AVAILABLE_AT + AVAILABLE_EVERYWHERE : AVAILABLE_AT;
+            String name = res.result().getName();
+            String countSql = String.format(DATABASES_COUNT_SQL, where);
+            ReadRouting.select(okapiHeaders, vertxContext, countSql, new JsonArray().add(name), countReply -> {
+                if (countReply.failed()) {
+                    ValidationHelper.handleError(countReply.cause(), asyncResultHandler);
+                    return;
+                }
+                long total = countReply.result().getResults().get(0).getLong(0);
+                JsonArray params = new JsonArray().add(name).add(limit).add(offset);
+                ReadRouting.select(okapiHeaders, vertxContext, String.format(DATABASES_SQL, where), params, reply -> {
+                    if (reply.succeeded()) {
+                        List<Resource> resourceList = new ArrayList<>();
+                        for (JsonArray row : reply.result().getResults()) {
+                            resourceList.add(Json.decodeValue(row.getString(0), Resource.class));
+                        }
+                        ResourceCollection resources = new ResourceCollection()
+                                .withResources(resourceList)
+                                .withTotalRecords((int) total);
+                        AvailabilityCache.put(tenantId, generation, key, resources);
+                        asyncResultHandler.handle(Future.succeededFuture(
+                                GetOrioleLibrariesDatabasesByLibraryIdResponse.respond200WithApplicationJson(resources)));
+                    } else {
+                        ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+                    }
+                });
+            });
+        }));
+    }
+
     /**
-     * Helper to get a library. Fetches the record from database.
+     * Helper to get a library. Looks it up in the tenant's {@link LibraryRegistry} snapshot; ids
+     * that are no UUID go to the database, which reports them.
      * @param libraryId
      * @param okapiHeaders
      * @param context
@@ -281,28 +376,21 @@ public class LibrariesImpl implements OrioleLibraries {
             Map<String, String> okapiHeaders,
             Context context,
             Handler<ExtendedAsyncResult<Library>> resp) {
-        Criterion c = new Criterion(
-                new Criteria().addField(ID_FIELD_NAME).setJSONB(false).setOperation("=").setValue("'"+libraryId+"'"));
-        ApiUtil.getPostgresClient(okapiHeaders, context).get(LIBRARY_TABLE, Library.class, c, true,
-                reply -> {
-                    if (reply.succeeded()) {
-                        List<Library> Libraries = reply.result().getResults();
-                        if (Libraries.isEmpty()) {
-                            resp.handle(new Failure<>(
-                                    ErrorType.NOT_FOUND, "Library " + libraryId + " not found"));
-                        } else {
-                            Library l = Libraries.get(0);
-                            resp.handle(new Success<>(l));
-                        }
-                    } else {
-                        String error = PgExceptionUtil.badRequestMessage(reply.cause());
-                        if (error == null) {
-                            resp.handle(new Failure<>(ErrorType.INTERNAL, ""));
-                        } else {
-                            resp.handle(new Failure<>(ErrorType.USER, error));
-
-                        }
-                    }
-                });
+        if (!LibraryRegistry.answers(null) || !OrioleImpl.UUID_PATTERN.matcher(libraryId).matches()) {
+            RecordLookup.byId(okapiHeaders, context, LIBRARY_TABLE, Library.class, "Library", libraryId, resp);
+            return;
+        }
+        LibraryRegistry.libraries(okapiHeaders, context, reply -> {
+            if (reply.failed()) {
+                resp.handle(new Failure<>(ErrorType.INTERNAL, reply.cause()));
+                return;
+            }
+            Library library = LibraryRegistry.byId(reply.result(), libraryId);
+            if (library == null) {
+                resp.handle(new Failure<>(ErrorType.NOT_FOUND, "Library " + libraryId + " not found"));
+            } else {
+                resp.handle(new Success<>(library));
+            }
+        });
     }
 }
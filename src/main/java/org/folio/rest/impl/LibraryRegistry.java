@@ -0,0 +1,207 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.Library;
+import org.folio.rest.jaxrs.model.LibraryCollection;
+import org.folio.rest.tools.utils.TenantTool;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.Modifier;
+import org.z3950.zing.cql.ModifierSet;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant snapshot of the library table, which is small and rarely written. Listing all
+ * libraries, looking one up by id and exact id/name queries, optionally sortBy name, are
+ * answered from the snapshot; other CQL goes to the database. Library writes of this instance
+ * drop the snapshot; the TTL oriole.library.cache.ttl (seconds) bounds staleness from writes
+ * made by other module instances.
+ */
+public final class LibraryRegistry {
+  private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(OrioleConfig.getLong("oriole.library.cache.ttl", 300));
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.library.cache.enabled", true);
+  private static final String LOAD_SQL = "SELECT jsonb::text FROM " + LibrariesImpl.LIBRARY_TABLE
+      + " ORDER BY lower(jsonb->>'name'), id";
+  private static final Map<String, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+  private static final Map<String, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+  private LibraryRegistry() {
+  }
+
+  private static final class Snapshot {
+    final List<Library> libraries;
+    final long loadedAt = System.nanoTime();
+
+    Snapshot(List<Library> libraries) {
+      this.libraries = Collections.unmodifiableList(libraries);
+    }
+  }
+
+  /**
+   * All libraries of the tenant, in name order, from the snapshot or loaded from the primary.
+   */
+  public static void libraries(Map<String, String> okapiHeaders, Context vertxContext,
+                               Handler<AsyncResult<List<Library>>> handler) {
+    String tenantId = TenantTool.tenantId(okapiHeaders);
+    Snapshot snapshot = SNAPSHOTS.get(tenantId);
+    if (snapshot != null && System.nanoTime() - snapshot.loadedAt < TTL_NANOS) {
+      handler.handle(Future.succeededFuture(snapshot.libraries));
+      return;
+    }
+    long generation = generation(tenantId).get();
+    // the primary, so a snapshot loaded right after a write of this instance includes it
+    ApiUtil.getPostgresClient(okapiHeaders, vertxContext).select(LOAD_SQL, reply -> {
+      if (reply.failed()) {
+        handler.handle(Future.failedFuture(reply.cause()));
+        return;
+      }
+      List<Library> libraries = new ArrayList<>();
+      for (JsonArray row : reply.result().getResults()) {
+        libraries.add(Json.decodeValue(row.getString(0), Library.class));
+      }
+      Snapshot loaded = new Snapshot(libraries);
+      if (generation(tenantId).get() == generation) {
+        // not kept when libraries changed while they were loaded
+        SNAPSHOTS.put(tenantId, loaded);
+      }
+      handler.handle(Future.succeededFuture(loaded.libraries));
+    });
+  }
+
+  /**
+   * The library with the id, or null, from {@link #libraries}.
+   */
+  public static Library byId(List<Library> libraries, String libraryId) {
+    for (Library library : libraries) {
+      if (library.getId().equalsIgnoreCase(libraryId)) {
+        return library;
+      }
+    }
+    return null;
+  }
+
+  public static void invalidate(String tenantId) {
+    generation(tenantId).incrementAndGet();
+    SNAPSHOTS.remove(tenantId);
+  }
+
+  /**
+   * True when {@link #page} can answer the query. Matching on the snapshot follows the CQL
+   * defaults: == compares the whole value, ignoring case and accents.
+   */
+  public static boolean answers(String query) {
+    return ENABLED && filter(query) != null;
+  }
+
+  /**
+   * A page of the libraries matching a query for which {@link #answers} is true.
+   */
+  public static LibraryCollection page(List<Library> libraries, String query, int offset, int limit) {
+    Filter filter = filter(query);
+    List<Library> matches = new ArrayList<>();
+    for (Library library : libraries) {
+      if (filter.matches(library)) {
+        matches.add(library);
+      }
+    }
+    // the snapshot is in name order already
+    if (filter.descending) {
+      Collections.reverse(matches);
+    }
+    int from = Math.min(offset, matches.size());
+    int to = (int) Math.min((long) from + limit, matches.size());
+    return new LibraryCollection()
+        .withLibraries(new ArrayList<>(matches.subList(from, to)))
+        .withTotalRecords(matches.size());
+  }
+
+  private static final class Filter {
+    String field;
+    String value;
+    boolean descending;
+
+    boolean matches(Library library) {
+      if (field == null) {
+        return true;
+      }
+      String actual = "id".equals(field) ? library.getId() : library.getName();
+      return actual != null && fold(actual).equals(fold(value));
+    }
+  }
+
+  /**
+   * The filter of a simple query, or null: an empty query, cql.allRecords=1, or one id or name
+   * compared with == without masking, sorted by name or not at all.
+   */
+  private static Filter filter(String query) {
+    Filter filter = new Filter();
+    if (query == null || query.trim().isEmpty()) {
+      return filter;
+    }
+    CQLNode node;
+    try {
+      node = new CQLParser().parse(query);
+    } catch (Exception e) {
+      // the database search reports the error
+      return null;
+    }
+    if (node instanceof CQLSortNode) {
+      CQLSortNode sort = (CQLSortNode) node;
+      List<ModifierSet> indexes = sort.getSortIndexes();
+      if (indexes.size() != 1 || !"name".equals(indexes.get(0).getBase())) {
+        return null;
+      }
+      for (Modifier modifier : indexes.get(0).getModifiers()) {
+        String type = modifier.getType();
+        if ("sort.descending".equals(type)) {
+          filter.descending = true;
+        } else if (!"sort.ascending".equals(type)) {
+          return null;
+        }
+      }
+      node = sort.getSubtree();
+    }
+    if (!(node instanceof CQLTermNode)) {
+      return null;
+    }
+    CQLTermNode term = (CQLTermNode) node;
+    String index = term.getIndex();
+    String relation = term.getRelation().getBase();
+    if ("cql.allRecords".equalsIgnoreCase(index)) {
+      return filter;
+    }
+    String value = term.getTerm();
+    if (!("id".equals(index) || "name".equals(index)) || !"==".equals(relation)
+        || !term.getRelation().getModifiers().isEmpty()
+        || value.isEmpty() || value.matches(".*[*?^\\\\].*")) {
+      return null;
+    }
+    filter.field = index;
+    filter.value = value;
+    return filter;
+  }
+
+  static String fold(String s) {
+    return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+  }
+
+  private static AtomicLong generation(String tenantId) {
+    return GENERATIONS.computeIfAbsent(tenantId, t -> new AtomicLong());
+  }
+}
@@ -0,0 +1,348 @@
+package org.folio.rest.impl;
+
+import io.netty.channel.ConnectTimeoutException;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.LinkCheck;
+import org.folio.rest.jaxrs.model.LinkCheckRun;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.folio.rest.tools.utils.ObjectMapperTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks the URL of every resource of a tenant and stores the outcome in the link_check table,
+ * one row per resource. At most oriole.linkcheck.concurrency requests are in flight, a host gets
+ * one request at a time and at most one every oriole.linkcheck.host.interval.ms, and a request
+ * fails after oriole.linkcheck.timeout.ms. Links are checked with HEAD, and with GET when the
+ * server refuses or fails HEAD. Runs every oriole.linkcheck.interval.hours for every tenant when
+ * that is set, and on demand through POST /oriole-admin/link-check. Settings are read at the
+ * start of each run.
+ */
+public final class LinkChecker {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LinkChecker.class);
+  public static final String LINK_CHECK_TABLE = "link_check";
+  static final String OK = "ok";
+  static final String REDIRECT = "redirect";
+  static final String BROKEN = "broken";
+  static final String TIMEOUT = "timeout";
+  static final String ERROR = "error";
+  private static final String RUNNING = "running";
+  private static final String DONE = "done";
+  private static final String FAILED = "failed";
+  private static final String URLS_SQL = "SELECT id::text, jsonb->>'url', jsonb->>'altId', jsonb->>'title' FROM "
+      + OrioleImpl.RESOURCE_TABLE + " WHERE coalesce(jsonb->>'url', '') <> ''";
+  private static final String PRUNE_SQL = "DELETE FROM " + LINK_CHECK_TABLE + " l WHERE NOT EXISTS "
+      + "(SELECT 1 FROM " + OrioleImpl.RESOURCE_TABLE + " r WHERE r.id = l.id) RETURNING l.id";
+  // a failed check keeps the lastOk of the previous one
+  private static final String UPSERT_SQL = "INSERT INTO " + LINK_CHECK_TABLE + " (id, jsonb) VALUES (?::uuid, ?::jsonb) "
+      + "ON CONFLICT (id) DO UPDATE SET jsonb = CASE "
+      + "WHEN EXCLUDED.jsonb->'lastOk' IS NOT NULL OR " + LINK_CHECK_TABLE + ".jsonb->'lastOk' IS NULL THEN EXCLUDED.jsonb "
+      + "ELSE EXCLUDED.jsonb || jsonb_build_object('lastOk', " + LINK_CHECK_TABLE + ".jsonb->'lastOk') END "
+      + "RETURNING id";
+  private static final Map<String, LinkCheckRun> RUNS = new ConcurrentHashMap<>();
+
+  private LinkChecker() {
+  }
+
+  /**
+   * Checks every tenant each oriole.linkcheck.interval.hours; does nothing when that is 0, the default.
+   */
+  public static void schedule(Vertx vertx, Context context) {
+    long hours = OrioleConfig.getLong("oriole.linkcheck.interval.hours", 0);
+    if (hours <= 0) {
+      return;
+    }
+    LOGGER.info("Checking resource links every " + hours + " hour(s)");
+    context.runOnContext(v -> vertx.setPeriodic(hours * 3600000L, id ->
+        PostgresClient.getInstance(vertx).select(TenantWarmUp.TENANT_SCHEMAS_SQL, reply -> {
+          if (reply.failed()) {
+            LOGGER.warn("Unable to list tenants for the link check", reply.cause());
+            return;
+          }
+          for (JsonArray row : reply.result().getResults()) {
+            String tenantId = row.getString(0);
+            context.runOnContext(x -> start(vertx, context, tenantId));
+          }
+        })));
+  }
+
+  /**
+   * Starts a run for the tenant, unless one is running already, and returns the running one.
+   * Call on an event loop context.
+   */
+  public static LinkCheckRun start(Vertx vertx, Context context, String tenantId) {
+    LinkCheckRun current = RUNS.get(tenantId);
+    if (current != null && RUNNING.equals(current.getStatus())) {
+      return current;
+    }
+    LinkCheckRun run = new LinkCheckRun()
+        .withTenant(tenantId)
+        .withStatus(RUNNING)
+        .withTotal(0)
+        .withChecked(0)
+        .withFailed(0)
+        .withStarted(new Date());
+    RUNS.put(tenantId, run);
+    new Job(vertx, context, tenantId, run).start();
+    return run;
+  }
+
+  public static LinkCheckRun status(String tenantId) {
+    return RUNS.get(tenantId);
+  }
+
+  /**
+   * One run over the URLs of a tenant. Only touched on its context.
+   */
+  private static final class Job {
+    private final Vertx vertx;
+    private final Context context;
+    private final String tenantId;
+    private final LinkCheckRun run;
+    private final int concurrency = OrioleConfig.getInt("oriole.linkcheck.concurrency", 16);
+    private final long hostIntervalMs = OrioleConfig.getLong("oriole.linkcheck.host.interval.ms", 1000);
+    private final long timeoutMs = OrioleConfig.getLong("oriole.linkcheck.timeout.ms", 10000);
+    private final String userAgent = OrioleConfig.get("oriole.linkcheck.user.agent", "mod-oriole link checker");
+    // pending links by host, in the order the hosts were first seen
+    private final Map<String, ArrayDeque<JsonArray>> pending = new LinkedHashMap<>();
+    private final Map<String, Long> nextAllowed = new HashMap<>();
+    private final Set<String> busyHosts = new HashSet<>();
+    private final long startNanos = System.nanoTime();
+    private HttpClient client;
+    private int inFlight;
+    private long timerId = -1;
+
+    Job(Vertx vertx, Context context, String tenantId, LinkCheckRun run) {
+      this.vertx = vertx;
+      this.context = context;
+      this.tenantId = tenantId;
+      this.run = run;
+    }
+
+    void start() {
+      PostgresClient postgres = PostgresClient.getInstance(vertx, tenantId);
+      postgres.select(PRUNE_SQL, prune -> {
+        if (prune.failed()) {
+          context.runOnContext(v -> fail(prune.cause()));
+          return;
+        }
+        postgres.select(URLS_SQL, reply -> context.runOnContext(v -> {
+          if (reply.failed()) {
+            fail(reply.cause());
+            return;
+          }
+          for (JsonArray row : reply.result().getResults()) {
+            pending.computeIfAbsent(host(row.getString(1)), h -> new ArrayDeque<>()).add(row);
+          }
+          run.setTotal(reply.result().getNumRows());
+          LOGGER.info("Checking " + run.getTotal() + " link(s) on " + pending.size() + " host(s) for tenant " + tenantId);
+          client = vertx.createHttpClient(new HttpClientOptions()
+              .setKeepAlive(false)
+              .setMaxPoolSize(concurrency)
+              .setConnectTimeout((int) timeoutMs)
+              .setMaxRedirects(5));
+          dispatch();
+        }));
+      });
+    }
+
+    private void dispatch() {
+      if (pending.isEmpty() && inFlight == 0) {
+        finish();
+        return;
+      }
+      long now = System.currentTimeMillis();
+      long earliest = Long.MAX_VALUE;
+      Iterator<Map.Entry<String, ArrayDeque<JsonArray>>> hosts = pending.entrySet().iterator();
+      while (inFlight < concurrency && hosts.hasNext()) {
+        Map.Entry<String, ArrayDeque<JsonArray>> entry = hosts.next();
+        String host = entry.getKey();
+        if (busyHosts.contains(host)) {
+          continue;
+        }
+        long allowed = nextAllowed.getOrDefault(host, 0L);
+        if (allowed > now) {
+          earliest = Math.min(earliest, allowed);
+          continue;
+        }
+        JsonArray row = entry.getValue().poll();
+        if (entry.getValue().isEmpty()) {
+          hosts.remove();
+        }
+        busyHosts.add(host);
+        nextAllowed.put(host, now + hostIntervalMs);
+        inFlight++;
+        check(row, check -> store(check, v -> {
+          busyHosts.remove(host);
+          inFlight--;
+          dispatch();
+        }));
+      }
+      if (inFlight < concurrency && earliest != Long.MAX_VALUE && timerId < 0) {
+        timerId = vertx.setTimer(Math.max(1, earliest - now), id -> {
+          timerId = -1;
+          dispatch();
+        });
+      }
+    }
+
+    private void check(JsonArray row, Handler<LinkCheck> done) {
+      long start = System.nanoTime();
+      String url = row.getString(1);
+      LinkCheck check = new LinkCheck()
+          .withId(row.getString(0))
+          .withUrl(url)
+          .withAltId(row.getString(2))
+          .withTitle(row.getString(3));
+      send(HttpMethod.HEAD, url, head -> {
+        if (head.status != null && head.status < 400 || isTimeout(head.error)) {
+          done.handle(outcome(check, HttpMethod.HEAD, head, start));
+          return;
+        }
+        // many servers answer HEAD with 403, 404 or 405, or drop it, while GET works
+        send(HttpMethod.GET, url, get -> done.handle(outcome(check, HttpMethod.GET, get, start)));
+      });
+    }
+
+    private void send(HttpMethod method, String url, Handler<Reply> done) {
+      Reply response = new Reply();
+      Handler<Reply> once = r -> {
+        if (!response.handled) {
+          response.handled = true;
+          done.handle(r);
+        }
+      };
+      HttpClientRequest request;
+      try {
+        request = client.requestAbs(method, url);
+      } catch (Exception e) {
+        response.error = e;
+        once.handle(response);
+        return;
+      }
+      request.setFollowRedirects(true);
+      request.setTimeout(timeoutMs);
+      request.putHeader("User-Agent", userAgent);
+      request.handler(res -> {
+        response.status = res.statusCode();
+        once.handle(response);
+        if (method == HttpMethod.GET) {
+          // the status is all we need; do not download the page
+          request.reset();
+        }
+      });
+      request.exceptionHandler(e -> {
+        response.error = e;
+        once.handle(response);
+      });
+      request.end();
+    }
+
+    private LinkCheck outcome(LinkCheck check, HttpMethod method, Reply response, long start) {
+      Date now = new Date();
+      check.setMethod(method.name());
+      check.setResponseTimeMs((int) ((System.nanoTime() - start) / 1000000));
+      check.setLastChecked(now);
+      if (response.status != null) {
+        check.setHttpStatus(response.status);
+        if (response.status < 300) {
+          check.setStatus(OK);
+          check.setLastOk(now);
+        } else if (response.status < 400) {
+          check.setStatus(REDIRECT);
+        } else {
+          check.setStatus(BROKEN);
+        }
+      } else if (isTimeout(response.error)) {
+        check.setStatus(TIMEOUT);
+        check.setMessage(response.error.getMessage());
+      } else {
+        check.setStatus(ERROR);
+        check.setMessage(String.valueOf(response.error));
+      }
+      return check;
+    }
+
+    private void store(LinkCheck check, Handler<Void> done) {
+      run.setChecked(run.getChecked() + 1);
+      if (!OK.equals(check.getStatus())) {
+        run.setFailed(run.getFailed() + 1);
+      }
+      String json;
+      try {
+        json = ObjectMapperTool.getMapper().writeValueAsString(check);
+      } catch (Exception e) {
+        LOGGER.error("Unable to serialize the link check of resource " + check.getId(), e);
+        done.handle(null);
+        return;
+      }
+      JsonArray params = new JsonArray().add(check.getId()).add(json);
+      PostgresClient.getInstance(vertx, tenantId).select(UPSERT_SQL, params, reply -> context.runOnContext(v -> {
+        if (reply.failed()) {
+          LOGGER.warn("Unable to store the link check of resource " + check.getId(), reply.cause());
+        }
+        done.handle(null);
+      }));
+    }
+
+    private void finish() {
+      client.close();
+      run.setStatus(DONE);
+      run.setFinished(new Date());
+      int ms = (int) ((System.nanoTime() - startNanos) / 1000000);
+      StatsTracker.addStatElement("oriole.linkcheck." + tenantId, ms);
+      LOGGER.info("Checked " + run.getChecked() + " link(s) of tenant " + tenantId + " in " + ms + " ms, "
+          + run.getFailed() + " not ok");
+    }
+
+    private void fail(Throwable cause) {
+      if (client != null) {
+        client.close();
+      }
+      run.setStatus(FAILED);
+      run.setFinished(new Date());
+      run.setMessage(cause.getMessage());
+      LOGGER.error("Link check of tenant " + tenantId + " failed", cause);
+    }
+
+    private static String host(String url) {
+      try {
+        String host = URI.create(url.trim()).getHost();
+        return host == null ? "" : host.toLowerCase(Locale.ROOT);
+      } catch (IllegalArgumentException e) {
+        return "";
+      }
+    }
+  }
+
+  private static boolean isTimeout(Throwable e) {
+    return e instanceof TimeoutException || e instanceof ConnectTimeoutException;
+  }
+
+  private static final class Reply {
+    private Integer status;
+    private Throwable error;
+    private boolean handled;
+  }
+}
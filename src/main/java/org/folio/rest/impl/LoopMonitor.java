@@ -0,0 +1,247 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.Handler;
+import org.folio.rest.jaxrs.model.BlockedSample;
+import org.folio.rest.jaxrs.model.EventLoopHandler;
+import org.folio.rest.jaxrs.model.EventLoopStats;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how long handlers hold the event loop. {@link #run} and {@link #wrap} time one slice
+ * of synchronous work of a named handler: the handler method up to its first asynchronous call,
+ * or one callback. The database calls of {@link ReadRouting}, {@link QueryGuard} and
+ * {@link SingleFlight} time their callbacks as slices of the handler that made the call, so the
+ * decoding of results and the building of responses are measured too. Each handler has a
+ * histogram of its slices. A slice of at least oriole.loop.threshold.ms (50) is blocking: it is
+ * logged and kept, with a stack, among the last oriole.loop.samples (5) blocking slices of the
+ * handler. The stack is taken by a watchdog thread, every oriole.loop.sample.ms (10), while the
+ * slice is still running, so it shows where the time goes rather than where the handler ended. The statistics are those of the module instance.
+ */
+public final class LoopMonitor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoopMonitor.class);
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.loop.monitor.enabled", true);
+  static final long THRESHOLD_MS = Math.max(1, OrioleConfig.getLong("oriole.loop.threshold.ms", 50));
+  private static final long SAMPLE_MS = Math.max(1, OrioleConfig.getLong("oriole.loop.sample.ms", 10));
+  private static final int SAMPLES = Math.max(0, OrioleConfig.getInt("oriole.loop.samples", 5));
+  private static final int STACK_DEPTH = 40;
+  // upper bounds of the histogram buckets; one more bucket counts the longer slices
+  static final long[] BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000};
+  private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+  private static final Map<Thread, Slice> RUNNING = new ConcurrentHashMap<>();
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+  private LoopMonitor() {
+  }
+
+  private static final class Slice {
+    // null for an untimed slice
+    final String handler;
+    final long start = System.nanoTime();
+    final long startedAt = System.currentTimeMillis();
+    volatile StackTraceElement[] stack;
+
+    Slice(String handler) {
+      this.handler = handler;
+    }
+  }
+
+  /**
+   * Runs the body as a slice of the handler. A slice started within another one is part of the
+   * outer slice.
+   */
+  public static void run(String handler, Runnable body) {
+    Thread thread = Thread.currentThread();
+    if (!ENABLED || RUNNING.containsKey(thread)) {
+      body.run();
+      return;
+    }
+    Slice slice = new Slice(handler);
+    RUNNING.put(thread, slice);
+    try {
+      body.run();
+    } finally {
+      RUNNING.remove(thread);
+      if (handler != null) {
+        record(slice, thread, System.nanoTime() - slice.start);
+      }
+    }
+  }
+
+  /**
+   * Runs the body without timing it, nor the slices it starts and the callbacks it wraps: for
+   * work that is not traffic, such as {@link TenantWarmUp}.
+   */
+  public static void untimed(Runnable body) {
+    run(null, body);
+  }
+
+  /**
+   * The callback, timed as a slice of the handler each time it is called; not timed when it is
+   * wrapped within {@link #untimed}.
+   */
+  public static <T> Handler<T> wrap(String handler, Handler<T> callback) {
+    if (!ENABLED) {
+      return callback;
+    }
+    Slice current = RUNNING.get(Thread.currentThread());
+    String name = current != null && current.handler == null ? null : handler;
+    return event -> run(name, () -> callback.handle(event));
+  }
+
+  /**
+   * The callback, timed as a slice of the handler whose slice is running now: the one issuing
+   * the asynchronous call the callback answers. Outside of a slice the callback is not timed.
+   */
+  public static <T> Handler<T> wrap(Handler<T> callback) {
+    Slice slice = ENABLED ? RUNNING.get(Thread.currentThread()) : null;
+    return slice == null ? callback : wrap(slice.handler, callback);
+  }
+
+  /**
+   * Starts the watchdog that takes the stacks of blocking slices; slices are measured without it.
+   */
+  public static void start() {
+    if (ENABLED && STARTED.compareAndSet(false, true)) {
+      Thread watchdog = new Thread(LoopMonitor::watch, "oriole-loop-monitor");
+      watchdog.setDaemon(true);
+      watchdog.start();
+    }
+  }
+
+  private static void watch() {
+    long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MS);
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(SAMPLE_MS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      long now = System.nanoTime();
+      for (Map.Entry<Thread, Slice> entry : RUNNING.entrySet()) {
+        Slice slice = entry.getValue();
+        if (slice.handler != null && slice.stack == null && now - slice.start >= thresholdNanos) {
+          StackTraceElement[] stack = entry.getKey().getStackTrace();
+          // not kept when the slice ended while the stack was taken
+          if (RUNNING.get(entry.getKey()) == slice) {
+            slice.stack = stack;
+          }
+        }
+      }
+    }
+  }
+
+  private static void record(Slice slice, Thread thread, long nanos) {
+    Stats stats = STATS.computeIfAbsent(slice.handler, Stats::new);
+    long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+    if (ms < THRESHOLD_MS) {
+      stats.add(nanos, null);
+      return;
+    }
+    StackTraceElement[] stack = slice.stack;
+    List<String> frames = new ArrayList<>();
+    if (stack != null) {
+      for (int i = 0; i < stack.length && i < STACK_DEPTH; i++) {
+        frames.add(stack[i].toString());
+      }
+    }
+    stats.add(nanos, new BlockedSample()
+        .withThread(thread.getName())
+        .withStartedAt(new Date(slice.startedAt))
+        .withDurationMs((int) ms)
+        .withStack(frames));
+    StatsTracker.addStatElement("oriole.loop." + slice.handler, (int) ms);
+    LOGGER.warn(slice.handler + " held " + thread.getName() + " for " + ms + " ms"
+        + (frames.isEmpty() ? "" : ", at " + frames.get(0)));
+  }
+
+  public static EventLoopStats stats() {
+    List<EventLoopHandler> handlers = new ArrayList<>();
+    for (Stats stats : STATS.values()) {
+      handlers.add(stats.snapshot());
+    }
+    Collections.sort(handlers, (a, b) -> a.getBlocked().equals(b.getBlocked())
+        ? b.getTotalMs().compareTo(a.getTotalMs())
+        : b.getBlocked().compareTo(a.getBlocked()));
+    List<Integer> buckets = new ArrayList<>();
+    for (long bound : BUCKETS_MS) {
+      buckets.add((int) bound);
+    }
+    return new EventLoopStats()
+        .withEnabled(ENABLED)
+        .withThresholdMs((int) THRESHOLD_MS)
+        .withBucketsMs(buckets)
+        .withHandlers(handlers);
+  }
+
+  public static void reset() {
+    STATS.clear();
+  }
+
+  static int bucket(long nanos) {
+    for (int i = 0; i < BUCKETS_MS.length; i++) {
+      if (nanos <= TimeUnit.MILLISECONDS.toNanos(BUCKETS_MS[i])) {
+        return i;
+      }
+    }
+    return BUCKETS_MS.length;
+  }
+
+  /**
+   * Counters of one handler. Its slices run on several event loops, so they are guarded by the
+   * monitor of the counters.
+   */
+  private static final class Stats {
+    private final String handler;
+    private final long[] histogram = new long[BUCKETS_MS.length + 1];
+    private final ArrayDeque<BlockedSample> samples = new ArrayDeque<>();
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long blocked;
+
+    Stats(String handler) {
+      this.handler = handler;
+    }
+
+    synchronized void add(long nanos, BlockedSample sample) {
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      histogram[bucket(nanos)]++;
+      if (sample != null) {
+        blocked++;
+        samples.addLast(sample);
+        while (samples.size() > SAMPLES) {
+          samples.removeFirst();
+        }
+      }
+    }
+
+    synchronized EventLoopHandler snapshot() {
+      List<Integer> counts = new ArrayList<>(histogram.length);
+      for (long n : histogram) {
+        counts.add((int) Math.min(n, Integer.MAX_VALUE));
+      }
+      return new EventLoopHandler()
+          .withHandler(handler)
+          .withCount((int) Math.min(count, Integer.MAX_VALUE))
+          .withTotalMs((int) Math.min(TimeUnit.NANOSECONDS.toMillis(totalNanos), Integer.MAX_VALUE))
+          .withMaxMs((int) TimeUnit.NANOSECONDS.toMillis(maxNanos))
+          .withBlocked((int) Math.min(blocked, Integer.MAX_VALUE))
+          .withHistogram(counts)
+          .withSamples(new ArrayList<>(samples));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.folio.rest.jaxrs.model.ExplainedStatement;
+import org.folio.rest.jaxrs.model.LinkCheckRun;
+import org.folio.rest.jaxrs.model.WarmUpStatus;
+import org.folio.rest.jaxrs.resource.OrioleAdmin;
+import org.folio.rest.tools.utils.TenantTool;
+import org.folio.rest.tools.utils.ValidationHelper;
+
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
+
+public class OrioleAdminImpl implements OrioleAdmin {
+
+  public OrioleAdminImpl(Vertx vertx, String tenantId) {
+  }
+
+  @Override
+  public void getOrioleAdminWarmup(Map<String, String> okapiHeaders,
+                                   Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    WarmUpStatus status = TenantWarmUp.status();
+    if (status.getReady()) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleAdminWarmupResponse.respond200WithApplicationJson(status)));
+    } else {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleAdminWarmupResponse.respond503WithApplicationJson(status)));
+    }
+  }
+
+  @Override
+  public void getOrioleAdminEzproxyPublisher(Map<String, String> okapiHeaders,
+                                             Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    asyncResultHandler.handle(Future.succeededFuture(
+        GetOrioleAdminEzproxyPublisherResponse.respond200WithApplicationJson(EzproxyPublisher.status())));
+  }
+
+  @Override
+  public void getOrioleAdminLinkCheck(Map<String, String> okapiHeaders,
+                                      Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    LinkCheckRun run = LinkChecker.status(TenantTool.tenantId(okapiHeaders));
+    if (run == null) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleAdminLinkCheckResponse.respond404WithTextPlain("No link check since the module started")));
+    } else {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleAdminLinkCheckResponse.respond200WithApplicationJson(run)));
+    }
+  }
+
+  @Override
+  public void postOrioleAdminLinkCheck(Map<String, String> okapiHeaders,
+                                       Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    LinkCheckRun run = LinkChecker.start(vertxContext.owner(), vertxContext, TenantTool.tenantId(okapiHeaders));
+    asyncResultHandler.handle(Future.succeededFuture(
+        PostOrioleAdminLinkCheckResponse.respond202WithApplicationJson(run)));
+  }
+
+  @Override
+  public void getOrioleAdminAdmission(Map<String, String> okapiHeaders,
+                                      Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    asyncResultHandler.handle(Future.succeededFuture(GetOrioleAdminAdmissionResponse.respond200WithApplicationJson(
+        AdmissionControl.status(TenantTool.tenantId(okapiHeaders)))));
+  }
+
+  @Override
+  public void getOrioleAdminExplain(String query, int offset, int limit, List<String> facets,
+                                    Map<String, String> okapiHeaders,
+                                    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    List<ExplainedStatement> statements;
+    try {
+      statements = new OrioleImpl(vertxContext.owner(), TenantTool.tenantId(okapiHeaders))
+          .explainableStatements(query, offset, limit, facets);
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleAdminExplainResponse.respond400WithTextPlain(e.getMessage())));
+      return;
+    }
+    QueryExplainer.explain(okapiHeaders, vertxContext, query, statements, reply -> {
+      if (reply.succeeded()) {
+        asyncResultHandler.handle(Future.succeededFuture(
+            GetOrioleAdminExplainResponse.respond200WithApplicationJson(reply.result())));
+      } else {
+        ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+      }
+    });
+  }
+
+  @Override
+  public void getOrioleAdminQueryStats(int limit, Map<String, String> okapiHeaders,
+                                       Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    asyncResultHandler.handle(Future.succeededFuture(GetOrioleAdminQueryStatsResponse.respond200WithApplicationJson(
+        QueryAnalytics.stats(TenantTool.tenantId(okapiHeaders), limit))));
+  }
+
+  @Override
+  public void deleteOrioleAdminQueryStats(Map<String, String> okapiHeaders,
+                                          Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    QueryAnalytics.reset(TenantTool.tenantId(okapiHeaders));
+    asyncResultHandler.handle(Future.succeededFuture(DeleteOrioleAdminQueryStatsResponse.respond204()));
+  }
+
+  @Override
+  public void getOrioleAdminEventLoop(Map<String, String> okapiHeaders,
+                                      Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    asyncResultHandler.handle(Future.succeededFuture(
+        GetOrioleAdminEventLoopResponse.respond200WithApplicationJson(LoopMonitor.stats())));
+  }
+
+  @Override
+  public void deleteOrioleAdminEventLoop(Map<String, String> okapiHeaders,
+                                         Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    LoopMonitor.reset();
+    asyncResultHandler.handle(Future.succeededFuture(DeleteOrioleAdminEventLoopResponse.respond204()));
+  }
+}
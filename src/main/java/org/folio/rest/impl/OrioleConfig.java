@@ -0,0 +1,34 @@
+package org.folio.rest.impl;
+
+/**
+ * Module settings. A key such as {@code oriole.availability.cache.ttl} is read from the system
+ * property of that name, then from the environment variable ORIOLE_AVAILABILITY_CACHE_TTL.
+ */
+public final class OrioleConfig {
+
+  private OrioleConfig() {
+  }
+
+  public static String get(String key, String defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null || value.isEmpty()) {
+      value = System.getenv(key.toUpperCase().replace('.', '_').replace('-', '_'));
+    }
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
+  public static int getInt(String key, int defaultValue) {
+    String value = get(key, null);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  public static long getLong(String key, long defaultValue) {
+    String value = get(key, null);
+    return value == null ? defaultValue : Long.parseLong(value.trim());
+  }
+
+  public static boolean getBoolean(String key, boolean defaultValue) {
+    String value = get(key, null);
+    return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+  }
+}
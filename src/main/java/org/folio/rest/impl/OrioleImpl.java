@@ -2,11 +2,13 @@ package org.folio.rest.impl;
 
 import com.google.common.net.InternetDomainName;
 import io.vertx.core.*;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.commons.lang.builder.ToStringStyle;
 import org.folio.okapi.common.ErrorType;
 import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.Failure;
@@ -14,13 +16,10 @@ import org.folio.okapi.common.Success;
 import org.folio.rest.RestVerticle;
 import org.folio.rest.jaxrs.model.*;
 import org.folio.rest.jaxrs.resource.Oriole;
-import org.folio.rest.persist.Criteria.Criteria;
-import org.folio.rest.persist.Criteria.Criterion;
 import org.folio.rest.persist.PgExceptionUtil;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.persist.cql.CQLWrapper;
-import org.folio.rest.persist.facets.FacetField;
-import org.folio.rest.persist.facets.FacetManager;
+import org.folio.rest.persist.interfaces.Results;
 import org.folio.rest.tools.messages.MessageConsts;
 import org.folio.rest.tools.messages.Messages;
 import org.folio.rest.tools.utils.OutStream;
@@ -38,22 +37,51 @@ import java.net.URL;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class OrioleImpl implements Oriole {
   private static final Logger LOGGER = LoggerFactory.getLogger(OrioleImpl.class);
   public static final String RESOURCE_TABLE = "resource";
   public static final String SUBJECT_TABLE = "subject";
   public static final String TAG_VIEW = "tag_view";
+  // Projections of resource.jsonb; the public one also drops private access restrictions (see resource.sql)
+  static final String PUBLIC_JSONB = "resource_public(jsonb)";
+  static final String PRIVATE_JSONB = "jsonb - 'keywords'";
   private static final String ID_FIELD_NAME = "id";
+  private static final Pattern ALT_ID_PATTERN = Pattern.compile("JHU\\d+");
+  static final Pattern UUID_PATTERN =
+      Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+  private static final int BATCH_MAX = OrioleConfig.getInt("oriole.batch.max", 100);
+  private static final String PATCH_SQL = "UPDATE " + RESOURCE_TABLE + " SET jsonb = jsonb_merge_patch(jsonb, ?::jsonb)"
+      + " WHERE id = ?::uuid RETURNING (" + PRIVATE_JSONB + ")::text";
+  private static final List<String> REQUIRED_FIELDS = Arrays.asList("title", "url");
   private static final String RESOURCE_SCHEMA_PATH = "ramls/schemas/resource.json";
   private static final String SUBJECT_SCHEMA_PATH = "ramls/schemas/subject.json";
+  private static final String LINK_CHECK_SCHEMA_PATH = "ramls/schemas/linkCheck.json";
   private static final String LOCATION_PREFIX = "/oriole/resources/";
   private static final String SUBJECT_PREFIX = "/oriole/subjects/";
-  private static final List<String> AVOID_DOMAINS = Arrays.asList("jhu.edu","library.jhu.edu","mse.jhu.edu","ac.uk","co.uk");
-  private static final List<String> OMIT_DATABASES = Arrays.asList("JHU05048","JHU04485","JHU02980","JHU03588","JHU04456","JHU03659","JHU04935");
-  private String RESOURCE_SCHEMA = null;
-  private String SUBJECT_SCHEMA = null;
+  private static final String SUBJECT_MATCH_CTE =
+      "WITH s AS (SELECT id::text AS id, jsonb->>'fastId' AS fast_id FROM " + SUBJECT_TABLE + " WHERE id = ?::uuid), "
+      + "m AS (SELECT rs.resource_id, max(rs.score) AS score FROM resource_subject rs, s "
+      + "WHERE rs.subject_id = s.id OR rs.fast_id = s.fast_id GROUP BY rs.resource_id) ";
+  private static final String SUBJECT_RESOURCES_COUNT_SQL = SUBJECT_MATCH_CTE
+      + "SELECT (SELECT count(*) FROM s), (SELECT count(*) FROM m)";
+  private static final String SUBJECT_RESOURCES_SQL = SUBJECT_MATCH_CTE
+      + "SELECT resource_public(r.jsonb)::text FROM m JOIN " + RESOURCE_TABLE + " r ON r.id = m.resource_id "
+      + "ORDER BY m.score DESC NULLS LAST, lower(r.jsonb->>'title') LIMIT ? OFFSET ?";
+  private static final String SUBJECT_COUNT_SQL = "SELECT count(*) FROM subject_count c WHERE (? = '' OR c.facet = ?)";
+  private static final String SUBJECT_BROWSE_SQL =
+      "SELECT s.id::text, c.fast_id, c.term, c.facet, c.resource_count, (c.score_sum / NULLIF(c.score_count, 0))::float8"
+      + " FROM subject_count c LEFT JOIN " + SUBJECT_TABLE + " s ON s.jsonb->>'fastId' = c.fast_id"
+      + " WHERE (? = '' OR c.facet = ?)";
+  private static final Map<String, String> SUBJECT_BROWSE_ORDER = new HashMap<>();
+  static {
+    SUBJECT_BROWSE_ORDER.put("count", "c.resource_count DESC, lower(c.term)");
+    SUBJECT_BROWSE_ORDER.put("term", "lower(c.term)");
+    SUBJECT_BROWSE_ORDER.put("score", "c.score_sum / NULLIF(c.score_count, 0) DESC NULLS LAST, lower(c.term)");
+  }
+  private static String RESOURCE_SCHEMA = null;
+  private static String SUBJECT_SCHEMA = null;
+  private static String LINK_CHECK_SCHEMA = null;
   private final Messages messages = Messages.getInstance();
 
   public OrioleImpl(Vertx vertx, String tennantId) {
@@ -78,6 +106,13 @@ public class OrioleImpl implements Oriole {
       LOGGER.error("Unable to load schema - " + SUBJECT_SCHEMA_PATH
           + ", validation of query fields will not be active");
     }
+    try {
+      InputStream lis = getClass().getClassLoader().getResourceAsStream(LINK_CHECK_SCHEMA_PATH);
+      LINK_CHECK_SCHEMA = IOUtils.toString(lis, "UTF-8");
+    } catch (Exception e) {
+      LOGGER.error("Unable to load schema - " + LINK_CHECK_SCHEMA_PATH
+          + ", validation of query fields will not be active");
+    }
   }
 
   @Override
@@ -90,7 +125,9 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    getResourceCollection(query, offset, limit, facets, lang, okapiHeaders, asyncResultHandler, vertxContext, false);
+    AdmissionControl.admit(AdmissionControl.SEARCH, "getOrioleDatabases",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> getResourceCollection(query, offset, limit, facets, lang, okapiHeaders, h, vertxContext, false));
   }
 
   @Override
@@ -103,7 +140,9 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    getResourceCollection(query, offset, limit, facets, lang, okapiHeaders, asyncResultHandler, vertxContext, true);
+    AdmissionControl.admit(AdmissionControl.SEARCH, "getOrioleResources",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> getResourceCollection(query, offset, limit, facets, lang, okapiHeaders, h, vertxContext, true));
   }
 
   @Override
@@ -113,6 +152,18 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
+    AdmissionControl.admit(AdmissionControl.WRITE, "postOrioleResources",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> createResource(lang, entity, okapiHeaders, h, vertxContext));
+  }
+
+  private void createResource(
+      String lang,
+      Resource entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
     String id = entity.getId();
     if (id == null || id.isEmpty()) {
       entity.setId(UUID.randomUUID().toString());
@@ -128,7 +179,8 @@ public class OrioleImpl implements Oriole {
           entity.setAltId(getNextAltId(lastAltId));
           saveResource(entity, okapiHeaders, asyncResultHandler, vertxContext);
         } else {
-
+          LOGGER.error("Unable to get the last altId", res.cause());
+          ValidationHelper.handleError(res.cause(), asyncResultHandler);
         }
       });
     } else {
@@ -141,7 +193,7 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    // extract subjects and store it in the join table
+    // subjects are copied into the resource_subject join table by a trigger on the same insert
     String id = entity.getId();
     vertxContext.runOnContext(
         v ->
@@ -151,6 +203,7 @@ public class OrioleImpl implements Oriole {
                 entity,
                 reply -> {
                   if (reply.succeeded()) {
+                    ResourceEvents.publishChanged(vertxContext, TenantTool.tenantId(okapiHeaders));
                     Object ret = reply.result();
                     entity.setId((String) ret);
                     OutStream stream = new OutStream();
@@ -208,7 +261,98 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
+    AdmissionControl.admit(AdmissionControl.ITEM, "getOrioleResourcesByResourceId",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> getResource(resourceId, lang, okapiHeaders, h, vertxContext));
+  }
+
+  @Override
+  public void getOrioleDatabaseBatch(
+      List<String> ids,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    getResourceBatch("getOrioleDatabaseBatch", ids, okapiHeaders, asyncResultHandler, vertxContext, false);
+  }
+
+  @Override
+  public void getOrioleResourceBatch(
+      List<String> ids,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    getResourceBatch("getOrioleResourceBatch", ids, okapiHeaders, asyncResultHandler, vertxContext, true);
+  }
+
+  private void getResourceBatch(
+      String handlerName,
+      List<String> ids,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext,
+      boolean showPrivate) {
+    // request order, each key once; "a,b" and repeated parameters are both accepted
+    Set<String> keys = new LinkedHashSet<>();
+    for (String param : ids) {
+      for (String key : param.split(",")) {
+        if (!key.trim().isEmpty()) {
+          keys.add(key.trim());
+        }
+      }
+    }
+    if (keys.size() > BATCH_MAX) {
+      asyncResultHandler.handle(Future.succeededFuture(GetOrioleResourceBatchResponse.respond400WithTextPlain(
+          "At most " + BATCH_MAX + " ids per request, got " + keys.size())));
+      return;
+    }
+    List<String> uuids = new ArrayList<>();
+    List<String> altIds = new ArrayList<>();
+    for (String key : keys) {
+      if (UUID_PATTERN.matcher(key).matches()) {
+        uuids.add(key);
+      } else if (ALT_ID_PATTERN.matcher(key).matches()) {
+        altIds.add(key);
+      }
+      // anything else cannot match and is reported as not found
+    }
+    // same projections as getResourceCollection: anonymous users never see private access restrictions
+    String projection = showPrivate ? PRIVATE_JSONB : PUBLIC_JSONB;
+    AdmissionControl.admit(AdmissionControl.ITEM, handlerName,
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> RecordLookup.byIdsOrAltIds(okapiHeaders, vertxContext, RESOURCE_TABLE, Resource.class, projection,
+            uuids, altIds, res -> {
+              if (res.failed()) {
+                if (res.getType() == ErrorType.USER) {
+                  h.handle(Future.succeededFuture(
+                      GetOrioleResourceBatchResponse.respond400WithTextPlain(res.cause().getMessage())));
+                } else {
+                  ValidationHelper.handleError(res.cause(), h);
+                }
+                return;
+              }
+              ResourceBatch batch = new ResourceBatch();
+              for (String key : keys) {
+                Resource resource = res.result().get(UUID_PATTERN.matcher(key).matches() ? key.toLowerCase() : key);
+                if (resource == null) {
+                  batch.getNotFound().add(key);
+                } else {
+                  batch.getResources().add(resource);
+                }
+              }
+              batch.setTotalRecords(batch.getResources().size());
+              h.handle(Future.succeededFuture(GetOrioleResourceBatchResponse.respond200WithApplicationJson(batch)));
+            }));
+  }
+
+  private void getResource(
+      String resourceId,
+      String lang,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
     if (resourceId.equals("_self")) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleResourcesByResourceIdResponse.respond404WithTextPlain("Not found: " + resourceId)));
       return;
     }
     getOneResource(resourceId, okapiHeaders, vertxContext, res -> {
@@ -239,12 +383,25 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    getOneResource(resourceId, okapiHeaders, vertxContext, res -> {
+    AdmissionControl.admit(AdmissionControl.WRITE, "deleteOrioleResourcesByResourceId",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> deleteResource(resourceId, lang, okapiHeaders, h, vertxContext));
+  }
+
+  private void deleteResource(
+      String resourceId,
+      String lang,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
+    RecordLookup.exists(okapiHeaders, vertxContext, RESOURCE_TABLE, "Resource", resourceId, res -> {
       if (res.succeeded()) {
         getPostgresClient(okapiHeaders, vertxContext).delete(RESOURCE_TABLE, resourceId,
             reply -> {
               if (reply.succeeded()) {
                 if (reply.result().getUpdated() == 1) {
+                  ResourceEvents.publishChanged(vertxContext, TenantTool.tenantId(okapiHeaders));
                   asyncResultHandler.handle(Future.succeededFuture(
                       DeleteOrioleResourcesByResourceIdResponse.respond204()));
                 } else {
@@ -284,13 +441,21 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    System.out.println("Okapi Headers:");
-    System.out.println(ToStringBuilder.reflectionToString(okapiHeaders, ToStringStyle.MULTI_LINE_STYLE));
-    System.out.println(ToStringBuilder.reflectionToString(vertxContext, ToStringStyle.MULTI_LINE_STYLE));
-    for (Map.Entry<String, String> entry : okapiHeaders.entrySet()) {
-      System.out.println(entry.getKey() + ": " + entry.getValue());
-    }
-    System.out.println("End of okapi headers");
+    AdmissionControl.admit(AdmissionControl.WRITE, "putOrioleResourcesByResourceId",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> updateResource(resourceId, lang, entity, okapiHeaders, h, vertxContext));
+  }
+
+  private void updateResource(
+      String resourceId,
+      String lang,
+      Resource entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
+    // header names only: the values include the token
+    LOGGER.debug("Okapi headers: {}", okapiHeaders.keySet());
     if (entity.getId() == null) {
       entity.setId(resourceId);
       LOGGER.debug("No ID in the resource. Take the one from the link");
@@ -303,9 +468,8 @@ public class OrioleImpl implements Oriole {
       return;
     }
 
-    getOneResource(resourceId, okapiHeaders, vertxContext, res -> {
+    RecordLookup.exists(okapiHeaders, vertxContext, RESOURCE_TABLE, "Resource", resourceId, res -> {
       if (res.succeeded()) {
-        Resource oldRes = res.result();
         getPostgresClient(okapiHeaders, vertxContext).update(RESOURCE_TABLE, entity, resourceId,
             reply -> {
               if (reply.succeeded()) {
@@ -314,6 +478,7 @@ public class OrioleImpl implements Oriole {
                       PutOrioleResourcesByResourceIdResponse.respond500WithTextPlain(
                           messages.getMessage(lang, MessageConsts.NoRecordsUpdated))));
                 } else {
+                  ResourceEvents.publishChanged(vertxContext, TenantTool.tenantId(okapiHeaders));
                   asyncResultHandler.handle(Future.succeededFuture(
                       PutOrioleResourcesByResourceIdResponse.respond204()));
                 }
@@ -338,15 +503,189 @@ public class OrioleImpl implements Oriole {
     });
   }
 
+  @Override
+  public void patchOrioleResourcesByResourceId(
+      String resourceId,
+      String lang,
+      ResourcePatch entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    AdmissionControl.admit(AdmissionControl.WRITE, "patchOrioleResourcesByResourceId",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> patchResource(resourceId, entity, okapiHeaders, h, vertxContext));
+  }
+
+  private void patchResource(
+      String resourceId,
+      ResourcePatch entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    JsonObject patch = new JsonObject(entity.getAdditionalProperties());
+    Errors valErr = patchErrors(resourceId, patch);
+    if (valErr != null) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          PatchOrioleResourcesByResourceIdResponse.respond422WithApplicationJson(valErr)));
+      return;
+    }
+    try {
+      // type check of the members the patch sets; the merged document keeps the ones it does not touch
+      Json.decodeValue(withoutNulls(patch).encode(), Resource.class);
+    } catch (DecodeException e) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          PatchOrioleResourcesByResourceIdResponse.respond400WithTextPlain(e.getMessage())));
+      return;
+    }
+    ReadRouting.recordWrite(okapiHeaders);
+    JsonArray params = new JsonArray().add(patch.encode()).add(resourceId);
+    getPostgresClient(okapiHeaders, vertxContext).select(PATCH_SQL, params, reply -> {
+      if (reply.failed()) {
+        String error = PgExceptionUtil.badRequestMessage(reply.cause());
+        if (error != null) {
+          asyncResultHandler.handle(Future.succeededFuture(
+              PatchOrioleResourcesByResourceIdResponse.respond400WithTextPlain(error)));
+        } else {
+          ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+        }
+        return;
+      }
+      List<JsonArray> rows = reply.result().getResults();
+      if (rows.isEmpty()) {
+        asyncResultHandler.handle(Future.succeededFuture(
+            PatchOrioleResourcesByResourceIdResponse.respond404WithTextPlain("Resource " + resourceId + " not found")));
+        return;
+      }
+      ResourceEvents.publishChanged(vertxContext, TenantTool.tenantId(okapiHeaders));
+      asyncResultHandler.handle(Future.succeededFuture(PatchOrioleResourcesByResourceIdResponse
+          .respond200WithApplicationJson(Json.decodeValue(rows.get(0).getString(0), Resource.class))));
+    });
+  }
+
+  /**
+   * Validation errors of a merge patch: it may not change the id nor remove a required field.
+   * Keywords are maintained by the database, so a patch of them is dropped. The resourceId is
+   * null for bulk updates, where the patch may not name an id at all.
+   */
+  static Errors patchErrors(String resourceId, JsonObject patch) {
+    patch.remove("keywords");
+    if (patch.containsKey(ID_FIELD_NAME) && (resourceId == null || !resourceId.equals(patch.getValue(ID_FIELD_NAME)))) {
+      return ValidationHelper.createValidationErrorMessage(ID_FIELD_NAME,
+          String.valueOf(patch.getValue(ID_FIELD_NAME)), "Can not change Id");
+    }
+    for (String field : REQUIRED_FIELDS) {
+      if (patch.containsKey(field) && patch.getValue(field) == null) {
+        return ValidationHelper.createValidationErrorMessage(field, "null", "Can not remove a required field");
+      }
+    }
+    return null;
+  }
+
+  static JsonObject withoutNulls(JsonObject patch) {
+    JsonObject copy = new JsonObject();
+    for (Map.Entry<String, Object> member : patch) {
+      Object value = member.getValue();
+      if (value instanceof JsonObject) {
+        copy.put(member.getKey(), withoutNulls((JsonObject) value));
+      } else if (value != null) {
+        copy.put(member.getKey(), value);
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  public void postOrioleResourceBulkDelete(
+      ResourceBulkDelete entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    boolean dryRun = Boolean.TRUE.equals(entity.getDryRun());
+    String sql;
+    try {
+      sql = ResourceBulk.deleteSql(ResourceBulk.where(entity.getQuery(), RESOURCE_SCHEMA), dryRun);
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          PostOrioleResourceBulkDeleteResponse.respond400WithTextPlain(e.getMessage())));
+      return;
+    }
+    AdmissionControl.admit(AdmissionControl.WRITE, "postOrioleResourceBulkDelete",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> ResourceBulk.run(okapiHeaders, vertxContext, entity.getQuery(), dryRun, sql, reply -> {
+          if (reply.succeeded()) {
+            h.handle(Future.succeededFuture(
+                PostOrioleResourceBulkDeleteResponse.respond200WithApplicationJson(reply.result())));
+          } else {
+            handleBulkError(reply.cause(), h);
+          }
+        }));
+  }
+
+  @Override
+  public void postOrioleResourceBulkUpdate(
+      ResourceBulkUpdate entity,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    boolean dryRun = Boolean.TRUE.equals(entity.getDryRun());
+    JsonObject patch = entity.getPatch() == null
+        ? new JsonObject() : new JsonObject(entity.getPatch().getAdditionalProperties());
+    Errors valErr = patchErrors(null, patch);
+    if (valErr != null) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          PostOrioleResourceBulkUpdateResponse.respond422WithApplicationJson(valErr)));
+      return;
+    }
+    List<String> addTags = entity.getAddTags() == null ? Collections.emptyList() : entity.getAddTags();
+    List<String> removeTags = entity.getRemoveTags() == null ? Collections.emptyList() : entity.getRemoveTags();
+    if (patch.isEmpty() && addTags.isEmpty() && removeTags.isEmpty()) {
+      asyncResultHandler.handle(Future.succeededFuture(PostOrioleResourceBulkUpdateResponse.respond400WithTextPlain(
+          "Nothing to change: give a patch, addTags or removeTags")));
+      return;
+    }
+    String sql;
+    try {
+      Json.decodeValue(withoutNulls(patch).encode(), Resource.class);
+      sql = ResourceBulk.updateSql(ResourceBulk.where(entity.getQuery(), RESOURCE_SCHEMA), patch, addTags, removeTags,
+          dryRun);
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          PostOrioleResourceBulkUpdateResponse.respond400WithTextPlain(e.getMessage())));
+      return;
+    }
+    AdmissionControl.admit(AdmissionControl.WRITE, "postOrioleResourceBulkUpdate",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> ResourceBulk.run(okapiHeaders, vertxContext, entity.getQuery(), dryRun, sql, reply -> {
+          if (reply.succeeded()) {
+            h.handle(Future.succeededFuture(
+                PostOrioleResourceBulkUpdateResponse.respond200WithApplicationJson(reply.result())));
+          } else {
+            handleBulkError(reply.cause(), h);
+          }
+        }));
+  }
+
+  private static void handleBulkError(Throwable cause, Handler<AsyncResult<Response>> asyncResultHandler) {
+    String error = PgExceptionUtil.badRequestMessage(cause);
+    if (error != null) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          Response.status(400).type(MediaType.TEXT_PLAIN).entity(error).build()));
+    } else {
+      ValidationHelper.handleError(cause, asyncResultHandler);
+    }
+  }
+
   @Override
   public void getOrioleTags(
       Map<String, String> okapiHeaders,
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext) {
-    vertxContext.runOnContext(v -> {  // TODO: Is this necessary?
-      PostgresClient client = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
+    vertxContext.runOnContext(LoopMonitor.wrap("getOrioleTags", v -> {  // TODO: Is this necessary?
       String sql = "SELECT tag FROM " + TAG_VIEW + " ORDER BY tag";
-      client.select(sql, (reply) -> {
+      String key = "tags|" + ReadRouting.usesPrimary(okapiHeaders);
+      SingleFlight.<ResultSet>run(TenantTool.tenantId(okapiHeaders), key, vertxContext,
+          h -> ReadRouting.select(okapiHeaders, vertxContext, QueryGuard.TAGS, sql, null, h),
+          LoopMonitor.wrap("getOrioleTags", reply -> {
         if (reply.succeeded()) {
           TagCollection tagCollection = new TagCollectionImpl();
           List<JsonArray> results = reply.result().getResults();
@@ -358,16 +697,46 @@ public class OrioleImpl implements Oriole {
           asyncResultHandler.handle(
               Future.succeededFuture(GetOrioleTagsResponse.respond200WithApplicationJson(tagCollection)));
         } else {
-          ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+          QueryGuard.handleError(reply.cause(), QueryGuard.TAGS, asyncResultHandler);
         }
-      });
-    });
+      }));
+    }));
+  }
+
+  @Override
+  public void getOrioleLinkChecks(
+      String query,
+      int offset,
+      int limit,
+      Map<String, String> okapiHeaders,
+      Handler<AsyncResult<Response>> asyncResultHandler,
+      Context vertxContext) {
+    CQLWrapper cql;
+    try {
+      cql = ApiUtil.getCQL(query, limit, offset, LinkChecker.LINK_CHECK_TABLE, LINK_CHECK_SCHEMA);
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(
+          GetOrioleLinkChecksResponse.respond400WithTextPlain(e.getMessage())));
+      return;
+    }
+    ReadRouting.get(okapiHeaders, vertxContext, LinkChecker.LINK_CHECK_TABLE, LinkCheck.class, "jsonb", cql, null,
+        LoopMonitor.wrap("getOrioleLinkChecks", reply -> {
+          if (reply.succeeded()) {
+            LinkCheckCollection checks = new LinkCheckCollection();
+            checks.setLinkChecks(reply.result().getResults());
+            checks.setTotalRecords(reply.result().getResultInfo().getTotalRecords());
+            asyncResultHandler.handle(
+                Future.succeededFuture(GetOrioleLinkChecksResponse.respond200WithApplicationJson(checks)));
+          } else {
+            ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+          }
+        }));
   }
 
   @Override
   public void getOrioleSubjects(String query, int offset, int limit, String lang, Map<String, String> okapiHeaders,
                                 Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
-    PostgresClient postgresClient = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
+    long start = System.nanoTime();
     CQLWrapper cql;
     try {
       cql = ApiUtil.getCQL(query, limit, offset, SUBJECT_TABLE, SUBJECT_SCHEMA_PATH);
@@ -376,8 +745,9 @@ public class OrioleImpl implements Oriole {
       asyncResultHandler.handle(Future.failedFuture(e));
       return;
     }
-    postgresClient.get(SUBJECT_TABLE, Subject.class, new String[]{"*"}, cql, true, false,
-        reply -> {
+    ReadRouting.get(okapiHeaders, vertxContext, SUBJECT_TABLE, Subject.class, "jsonb", cql, null,
+        LoopMonitor.wrap("getOrioleSubjects", reply -> {
+          QueryAnalytics.record(okapiHeaders, SUBJECT_TABLE, query, start);
           if (reply.succeeded()) {
             SubjectCollection subjects = new SubjectCollection();
             List<Subject> subjectList = reply.result().getResults();
@@ -389,12 +759,13 @@ public class OrioleImpl implements Oriole {
           } else {
             ValidationHelper.handleError(reply.cause(), asyncResultHandler);
           }
-        });
+        }));
   }
 
   @Override
   public void postOrioleSubjects(String lang, Subject entity, Map<String, String> okapiHeaders,
                                  Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
     String id = entity.getId();
     if (id == null || id.isEmpty()) {
       entity.setId(UUID.randomUUID().toString());
@@ -417,6 +788,140 @@ public class OrioleImpl implements Oriole {
         }));
   }
 
+  @Override
+  public void getOrioleSubjectsResourcesBySubjectId(String subjectId, int offset, int limit,
+                                                    Map<String, String> okapiHeaders,
+                                                    Handler<AsyncResult<Response>> asyncResultHandler,
+                                                    Context vertxContext) {
+    AdmissionControl.admit(AdmissionControl.SEARCH, "getOrioleSubjectsResourcesBySubjectId",
+        okapiHeaders, vertxContext, asyncResultHandler,
+        h -> getSubjectResources(subjectId, offset, limit, okapiHeaders, h, vertxContext));
+  }
+
+  private void getSubjectResources(String subjectId, int offset, int limit, Map<String, String> okapiHeaders,
+                                   Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    JsonArray subjectParams = new JsonArray().add(subjectId);
+    ReadRouting.select(okapiHeaders, vertxContext, QueryGuard.SEARCH, SUBJECT_RESOURCES_COUNT_SQL, subjectParams,
+        countReply -> {
+      if (countReply.failed()) {
+        QueryGuard.handleError(countReply.cause(), QueryGuard.SEARCH, asyncResultHandler);
+        return;
+      }
+      JsonArray counts = countReply.result().getResults().get(0);
+      if (counts.getLong(0) == 0) {
+        asyncResultHandler.handle(Future.succeededFuture(GetOrioleSubjectsResourcesBySubjectIdResponse
+            .respond404WithTextPlain("Subject " + subjectId + " not found")));
+        return;
+      }
+      JsonArray params = new JsonArray().add(subjectId).add(limit).add(offset);
+      ReadRouting.select(okapiHeaders, vertxContext, QueryGuard.SEARCH, SUBJECT_RESOURCES_SQL, params, reply -> {
+        if (reply.succeeded()) {
+          List<Resource> resourceList = new ArrayList<>();
+          for (JsonArray row : reply.result().getResults()) {
+            resourceList.add(Json.decodeValue(row.getString(0), Resource.class));
+          }
+          ResourceCollection resources = new ResourceCollection();
+          resources.setResources(resourceList);
+          resources.setTotalRecords(counts.getLong(1).intValue());
+          asyncResultHandler.handle(Future.succeededFuture(
+              GetOrioleSubjectsResourcesBySubjectIdResponse.respond200WithApplicationJson(resources)));
+        } else {
+          QueryGuard.handleError(reply.cause(), QueryGuard.SEARCH, asyncResultHandler);
+        }
+      });
+    });
+  }
+
+  @Override
+  public void getOrioleBrowseSubjects(String facet, String orderBy, boolean groupByFacet, int offset, int limit,
+                                      Map<String, String> okapiHeaders,
+                                      Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    String order = SUBJECT_BROWSE_ORDER.get(orderBy == null ? "count" : orderBy);
+    if (order == null) {
+      asyncResultHandler.handle(Future.succeededFuture(GetOrioleBrowseSubjectsResponse
+          .respond400WithTextPlain("orderBy must be one of " + SUBJECT_BROWSE_ORDER.keySet())));
+      return;
+    }
+    String sql = SUBJECT_BROWSE_SQL + " ORDER BY " + (groupByFacet ? "c.facet, " : "") + order + " LIMIT ? OFFSET ?";
+    String facetValue = facet == null ? "" : facet;
+    ReadRouting.select(okapiHeaders, vertxContext, SUBJECT_COUNT_SQL, new JsonArray().add(facetValue).add(facetValue),
+        LoopMonitor.wrap("getOrioleBrowseSubjects", countReply -> {
+          if (countReply.failed()) {
+            ValidationHelper.handleError(countReply.cause(), asyncResultHandler);
+            return;
+          }
+          long total = countReply.result().getResults().get(0).getLong(0);
+          JsonArray params = new JsonArray().add(facetValue).add(facetValue).add(limit).add(offset);
+          ReadRouting.select(okapiHeaders, vertxContext, sql, params, reply -> {
+            if (reply.succeeded()) {
+              List<SubjectCount> subjects = new ArrayList<>();
+              for (JsonArray row : reply.result().getResults()) {
+                subjects.add(new SubjectCount()
+                    .withId(row.getString(0))
+                    .withFastId(row.getString(1))
+                    .withTerm(row.getString(2))
+                    .withFacet(row.getString(3))
+                    .withResourceCount(row.getInteger(4))
+                    .withAverageScore(row.getDouble(5)));
+              }
+              SubjectBrowse browse = new SubjectBrowse()
+                  .withSubjects(subjects)
+                  .withTotalRecords((int) total);
+              asyncResultHandler.handle(Future.succeededFuture(
+                  GetOrioleBrowseSubjectsResponse.respond200WithApplicationJson(browse)));
+            } else {
+              ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+            }
+          });
+        }));
+  }
+
+  @Override
+  public void postOrioleBatchSubjects(int batchSize, SubjectBatch entity, Map<String, String> okapiHeaders,
+                                      Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
+    PostgresClient postgresClient = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
+    vertxContext.runOnContext(v ->
+        new SubjectUpsert(postgresClient, batchSize).run(entity.getSubjects(), reply -> {
+          if (reply.succeeded()) {
+            asyncResultHandler.handle(Future.succeededFuture(
+                PostOrioleBatchSubjectsResponse.respond200WithApplicationJson(reply.result())));
+          } else {
+            ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+          }
+        }));
+  }
+
+  @Override
+  public void putOrioleBatchSubjects(int batchSize, SubjectBatch entity, Map<String, String> okapiHeaders,
+                                     Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    SubjectReload reload = new SubjectReload(ApiUtil.getPostgresClient(okapiHeaders, vertxContext),
+        TenantTool.tenantId(okapiHeaders), batchSize);
+    if (entity.getSubjects().size() > SubjectReload.MAX_RECORDS) {
+      asyncResultHandler.handle(Future.succeededFuture(PutOrioleBatchSubjectsResponse.respond400WithTextPlain(
+          "At most " + SubjectReload.MAX_RECORDS + " subjects can be loaded at once")));
+      return;
+    }
+    if (SubjectReload.rows(entity.getSubjects()).isEmpty()) {
+      // an empty vocabulary is almost certainly a broken export; DELETE /oriole/subjects clears it
+      asyncResultHandler.handle(Future.succeededFuture(
+          PutOrioleBatchSubjectsResponse.respond400WithTextPlain("No subject with a fastId to load")));
+      return;
+    }
+    ReadRouting.recordWrite(okapiHeaders);
+    reload.run(entity.getSubjects(), reply -> {
+      if (reply.succeeded()) {
+        asyncResultHandler.handle(Future.succeededFuture(
+            PutOrioleBatchSubjectsResponse.respond200WithApplicationJson(reply.result())));
+      } else if (reply.cause() instanceof SubjectReload.ReloadRunningException) {
+        asyncResultHandler.handle(Future.succeededFuture(
+            PutOrioleBatchSubjectsResponse.respond409WithTextPlain(reply.cause().getMessage())));
+      } else {
+        ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+      }
+    });
+  }
+
   @Override
   public void postOrioleDatabases(String lang, Resource entity, Map<String, String> okapiHeaders,
                                   Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
@@ -426,6 +931,7 @@ public class OrioleImpl implements Oriole {
   @Override
   public void deleteOrioleSubjects(String lang, Map<String, String> okapiHeaders,
                                    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
     String tennantId = TenantTool.tenantId(okapiHeaders);
     try {
       vertxContext.runOnContext(v -> {
@@ -476,6 +982,7 @@ public class OrioleImpl implements Oriole {
   public void putOrioleSubjectsBySubjectId(String subjectId, String lang, Subject entity,
                                            Map<String, String> okapiHeaders,
                                            Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    ReadRouting.recordWrite(okapiHeaders);
     if (entity.getId() == null) {
       entity.setId(subjectId);
       LOGGER.debug("No ID in the Subject. Take the one from the link");
@@ -485,9 +992,8 @@ public class OrioleImpl implements Oriole {
       asyncResultHandler.handle(Future.succeededFuture(Oriole.PutOrioleSubjectsBySubjectIdResponse.respond422WithApplicationJson(valErr)));
       return;
     }
-    getOneSubject(subjectId, okapiHeaders, vertxContext, res -> {
+    RecordLookup.exists(okapiHeaders, vertxContext, SUBJECT_TABLE, "Subject", subjectId, res -> {
       if (res.succeeded()) {
-        Subject oldSubject = res.result();
         ApiUtil.getPostgresClient(okapiHeaders, vertxContext).update(SUBJECT_TABLE, entity, subjectId, reply -> {
           if (reply.succeeded()) {
             if (reply.result().getUpdated() == 0) {
@@ -522,7 +1028,8 @@ public class OrioleImpl implements Oriole {
   @Override
   public void deleteOrioleSubjectsBySubjectId(String subjectId, String lang, Map<String, String> okapiHeaders,
                                               Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
-    getOneSubject(subjectId, okapiHeaders, vertxContext, res -> {
+    ReadRouting.recordWrite(okapiHeaders);
+    RecordLookup.exists(okapiHeaders, vertxContext, SUBJECT_TABLE, "Subject", subjectId, res -> {
       if (res.succeeded()) {
         ApiUtil.getPostgresClient(okapiHeaders, vertxContext).delete(SUBJECT_TABLE, subjectId, reply -> {
           if (reply.succeeded()) {
@@ -570,34 +1077,13 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Context context,
       Handler<ExtendedAsyncResult<Subject>> resp) {
-    Criterion c = new Criterion(
-        new Criteria().addField(ID_FIELD_NAME).setJSONB(false).setOperation("=").setValue("'" + subjectId + "'"));
-    ApiUtil.getPostgresClient(okapiHeaders, context).get(SUBJECT_TABLE, Subject.class, c, true,
-        reply -> {
-          if (reply.succeeded()) {
-            List<Subject> subjects = (List<Subject>) reply.result().getResults();
-            if (subjects.isEmpty()) {
-              resp.handle(new Failure<>(
-                  ErrorType.NOT_FOUND, "Subject " + subjectId + " not found"));
-            } else {
-              Subject l = subjects.get(0);
-              resp.handle(new Success<>(l));
-            }
-          } else {
-            String error = PgExceptionUtil.badRequestMessage(reply.cause());
-            if (error == null) {
-              resp.handle(new Failure<>(ErrorType.INTERNAL, ""));
-            } else {
-              resp.handle(new Failure<>(ErrorType.USER, error));
-
-            }
-          }
-        });
+    RecordLookup.byId(okapiHeaders, context, SUBJECT_TABLE, Subject.class, "Subject", subjectId, resp);
   }
 
 
   /**
-   * Helper to get a resource. Fetches the record from database.
+   * Helper to get a resource. Fetches the record from database. A value shaped like an altId
+   * (JHU00123) is looked up by altId instead of by uuid.
    *
    * @param resourceId
    * @param okapiHeaders
@@ -609,29 +1095,11 @@ public class OrioleImpl implements Oriole {
       Map<String, String> okapiHeaders,
       Context context,
       Handler<ExtendedAsyncResult<Resource>> resp) {
-    Criterion c = new Criterion(
-        new Criteria().addField(ID_FIELD_NAME).setJSONB(false).setOperation("=").setValue("'" + resourceId + "'"));
-    getPostgresClient(okapiHeaders, context).get(RESOURCE_TABLE, Resource.class, c, true,
-        reply -> {
-          if (reply.succeeded()) {
-            List<Resource> resources = (List<Resource>) reply.result().getResults();
-            if (resources.isEmpty()) {
-              resp.handle(new Failure<>(
-                  ErrorType.NOT_FOUND, "Resource " + resourceId + " not found"));
-            } else {
-              Resource r = resources.get(0);
-              resp.handle(new Success<>(r));
-            }
-          } else {
-            String error = PgExceptionUtil.badRequestMessage(reply.cause());
-            if (error == null) {
-              resp.handle(new Failure<>(ErrorType.INTERNAL, ""));
-            } else {
-              resp.handle(new Failure<Resource>(ErrorType.USER, error));
-
-            }
-          }
-        });
+    if (ALT_ID_PATTERN.matcher(resourceId).matches()) {
+      RecordLookup.byAltId(okapiHeaders, context, RESOURCE_TABLE, Resource.class, "Resource", resourceId, resp);
+    } else {
+      RecordLookup.byId(okapiHeaders, context, RESOURCE_TABLE, Resource.class, "Resource", resourceId, resp);
+    }
   }
 
   private void getLastAltId(Map<String, String> okapiHeaders, Context context,
@@ -674,7 +1142,7 @@ public class OrioleImpl implements Oriole {
   private CQLWrapper wrapCql(String query, int offset, int limit, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
     CQLWrapper cql = null;
     try {
-      cql = ApiUtil.getCQL(query, limit, offset, RESOURCE_TABLE, RESOURCE_SCHEMA);
+      cql = ApiUtil.getResourceCQL(query, limit, offset, RESOURCE_SCHEMA);
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
       asyncResultHandler.handle(Future.failedFuture(e));
@@ -692,50 +1160,58 @@ public class OrioleImpl implements Oriole {
       Handler<AsyncResult<Response>> asyncResultHandler,
       Context vertxContext,
       boolean showPrivate) {
+    long start = System.nanoTime();
     CQLWrapper cql = wrapCql(query, offset, limit, asyncResultHandler, vertxContext);
-    PostgresClient postgresClient = ApiUtil.getPostgresClient(okapiHeaders, vertxContext);
-    List<FacetField> facetList = FacetManager.convertFacetStrings2FacetFields(facets, "jsonb");
-    postgresClient.get(RESOURCE_TABLE, Resource.class, new String[]{"*"}, cql, true, false, facetList,
+    if (cql == null) {
+      return;
+    }
+    // keywords and, for anonymous users, private access restrictions are removed by the query itself
+    String projection = showPrivate ? PRIVATE_JSONB : PUBLIC_JSONB;
+    // a burst of the same search, such as the default database list, costs one query
+    String key = "resources|" + showPrivate + '|' + ReadRouting.usesPrimary(okapiHeaders)
+        + '|' + offset + '|' + limit + '|' + facets + '|' + query;
+    SingleFlight.<Results<Resource>>run(TenantTool.tenantId(okapiHeaders), key, vertxContext,
+        h -> ReadRouting.get(okapiHeaders, vertxContext, QueryGuard.SEARCH, RESOURCE_TABLE, Resource.class, projection,
+            cql, facets, h),
         reply -> {
+          QueryAnalytics.record(okapiHeaders, RESOURCE_TABLE, query, start);
           if (reply.succeeded()) {
-            ResourceCollection resources = new ResourceCollection();
-            List<Resource> resourceList = reply.result().getResults();
-            while (resourceList.remove(null)) ;
-            // There's a weird bug (possibly) in folio. When there is a URL
-            // param for "facets", it returns "Facet" objects
-            // in the resourceList. The following code doesn't resolve it. They're
-            // just left here for future reference.
-            // For example: /oriole/resources?facets=tags.tagList[]
-            Iterator<Resource> it = resourceList.iterator();
-            while (it.hasNext()) {
-              Object o = it.next();
-              if (o instanceof Facet) {
-                resourceList.remove(o);
-              } else {
-                ((Resource) o).setKeywords(null);
-                Resource r = (Resource) o;
-                if (!showPrivate) {
-                  r.setAccessRestrictions(
-                      r.getAccessRestrictions().stream()
-                          .filter(ar -> !ar.getPrivate())
-                          .collect(Collectors.toList()));
-                }
-              }
-            }
-
-            // Hide passwords unless it's from a logged in user
-
-            resources.setResources(resourceList);
-            Integer total = reply.result().getResultInfo().getTotalRecords();
-            resources.setTotalRecords(total);
-            resources.setResultInfo(reply.result().getResultInfo());
             asyncResultHandler.handle(
                 Future.succeededFuture(
                     GetOrioleResourcesResponse.respond200WithApplicationJson(
-                        resources)));
+                        toResourceCollection(reply.result()))));
           } else {
-            ValidationHelper.handleError(reply.cause(), asyncResultHandler);
+            QueryGuard.handleError(reply.cause(), QueryGuard.SEARCH, asyncResultHandler);
           }
         });
   }
+
+  /**
+   * The statements a search of /oriole/resources runs, for /oriole-admin/explain.
+   */
+  List<ExplainedStatement> explainableStatements(String query, int offset, int limit, List<String> facets)
+      throws Exception {
+    CQLWrapper page = ApiUtil.getResourceCQL(query, limit, offset, RESOURCE_SCHEMA);
+    CQLWrapper all = new ResourceCQLWrapper(ApiUtil.getTranslator(RESOURCE_TABLE, RESOURCE_SCHEMA), query);
+    return QueryExplainer.statements(RESOURCE_TABLE, PRIVATE_JSONB, page, all, facets);
+  }
+
+  static ResourceCollection toResourceCollection(Results<Resource> results) {
+    ResourceCollection resources = new ResourceCollection();
+    List<Resource> rows = results.getResults();
+    // There's a weird bug (possibly) in folio. When there is a URL
+    // param for "facets", it returns "Facet" objects
+    // in the results. Those and null rows are skipped while copying.
+    // For example: /oriole/resources?facets=tags.tagList[]
+    List<Resource> resourceList = new ArrayList<>(rows.size());
+    for (Object o : rows) {
+      if (o instanceof Resource) {
+        resourceList.add((Resource) o);
+      }
+    }
+    resources.setResources(resourceList);
+    resources.setTotalRecords(results.getResultInfo().getTotalRecords());
+    resources.setResultInfo(results.getResultInfo());
+    return resources;
+  }
 }
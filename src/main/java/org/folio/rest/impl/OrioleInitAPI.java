@@ -0,0 +1,27 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.folio.rest.resource.interfaces.InitAPI;
+
+/**
+ * Runs once when the verticle is deployed, before the HTTP server accepts requests. The server
+ * only starts listening, and /admin/health only answers, after the tenant warm-up is over.
+ */
+public class OrioleInitAPI implements InitAPI {
+
+  @Override
+  public void init(Vertx vertx, Context context, Handler<AsyncResult<Boolean>> handler) {
+    LoopMonitor.start();
+    ResourceEvents.onChanged(vertx, AvailabilityCache::invalidate);
+    ResourceEvents.onChanged(vertx, SingleFlight::forget);
+    TenantWarmUp.warmUpAll(vertx, context, res -> {
+      EzproxyPublisher.start(vertx, context);
+      LinkChecker.schedule(vertx, context);
+      handler.handle(Future.succeededFuture(true));
+    });
+  }
+}
@@ -0,0 +1,41 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import org.folio.rest.jaxrs.model.TenantAttributes;
+import org.folio.rest.tools.utils.TenantTool;
+
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Tenant enable and disable. After the schema is created or upgraded the tenant is warmed up,
+ * and only then is the enable acknowledged, so Okapi routes traffic to a warm tenant.
+ */
+public class OrioleTenantAPI extends TenantAPI {
+
+  @Override
+  public void postTenant(TenantAttributes entity, Map<String, String> headers,
+                         Handler<AsyncResult<Response>> handlers, Context context) {
+    super.postTenant(entity, headers, res -> {
+      if (res.failed() || res.result().getStatus() >= 300) {
+        handlers.handle(res);
+        return;
+      }
+      String tenantId = TenantTool.tenantId(headers);
+      AvailabilityCache.invalidate(tenantId);
+      EzproxyRuleMatcher.invalidate(tenantId);
+      LibraryRegistry.invalidate(tenantId);
+      TenantWarmUp.warmUp(context.owner(), context, tenantId, warm -> handlers.handle(res));
+    }, context);
+  }
+
+  @Override
+  public void deleteTenant(Map<String, String> headers, Handler<AsyncResult<Response>> handlers, Context context) {
+    AvailabilityCache.invalidate(TenantTool.tenantId(headers));
+    EzproxyRuleMatcher.invalidate(TenantTool.tenantId(headers));
+    LibraryRegistry.invalidate(TenantTool.tenantId(headers));
+    super.deleteTenant(headers, handlers, context);
+  }
+}
@@ -0,0 +1,364 @@
+package org.folio.rest.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.io.IOUtils;
+import org.folio.rest.jaxrs.model.IndexRecommendation;
+import org.folio.rest.jaxrs.model.QueryShape;
+import org.folio.rest.jaxrs.model.QueryStats;
+import org.folio.rest.tools.utils.TenantTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.z3950.zing.cql.CQLAndNode;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLNotNode;
+import org.z3950.zing.cql.CQLOrNode;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.ModifierSet;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which query shapes and CQL fields dominate a tenant's collection searches. A shape is the query
+ * with its terms replaced by '?', so "title=chem*" and "title=bio*" count as "title=?*". Shapes
+ * are counted in a count-min sketch (oriole.analytics.width counters in each of
+ * oriole.analytics.depth rows), and the oriole.analytics.topk most frequent ones are kept with
+ * their latency. Memory per tenant is bounded whatever the queries look like; counts are
+ * estimates that are never too low. Fields used by at least oriole.analytics.min.share of the
+ * queries (and oriole.analytics.min.count of them) without an index in schema.json, or one of
+ * the indexes resource.sql builds (see {@link #SQL_INDEXED}), that serves the relation are
+ * reported as index candidates.
+ */
+public final class QueryAnalytics {
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryAnalytics.class);
+  private static final String SCHEMA_PATH = "templates/db_scripts/schema.json";
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.analytics.enabled", true);
+  private static final int WIDTH = OrioleConfig.getInt("oriole.analytics.width", 2048);
+  private static final int DEPTH = OrioleConfig.getInt("oriole.analytics.depth", 4);
+  private static final int TOP_K = OrioleConfig.getInt("oriole.analytics.topk", 50);
+  private static final double MIN_SHARE =
+      Double.parseDouble(OrioleConfig.get("oriole.analytics.min.share", "0.05"));
+  private static final long MIN_COUNT = OrioleConfig.getLong("oriole.analytics.min.count", 20);
+  // table, field and relation served by the indexes of the db_scripts snippets, which schema.json
+  // does not list: ResourceCQLWrapper sends these terms to them
+  static final Set<String> SQL_INDEXED = new HashSet<>(Arrays.asList(
+      // resource_availability_idx_gin
+      "resource availability ==",
+      // resource_title_sort_idx
+      "resource title sortBy",
+      // resource_altid_idx
+      "resource altId ==",
+      // resource_subject_term_idx, resource_subject_fast_id_idx, resource_subject_subject_id_idx
+      "resource terms.subject.term ==",
+      "resource terms.subject.fastId =",
+      "resource terms.subject.fastId ==",
+      "resource terms.subject.id =",
+      "resource terms.subject.id =="));
+  // fields are named by the schema, so this only stops garbage from growing the map
+  private static final int MAX_FIELDS = 500;
+  private static final Set<String> BTREE_RELATIONS = new HashSet<>(Arrays.asList(
+      "==", "<", ">", "<=", ">=", "<>", "sortBy"));
+  private static final Set<String> TEXT_RELATIONS = new HashSet<>(Arrays.asList(
+      "=", "all", "any", "adj"));
+  private static final Map<String, Sketch> SKETCHES = new ConcurrentHashMap<>();
+  private static volatile Map<String, Map<String, Set<String>>> indexes;
+
+  private QueryAnalytics() {
+  }
+
+  /**
+   * Counts one collection query of the tenant against the table and how long it took.
+   */
+  public static void record(String tenantId, String table, String query, long startNanos) {
+    if (!ENABLED) {
+      return;
+    }
+    int ms = (int) ((System.nanoTime() - startNanos) / 1000000);
+    Shape shape;
+    try {
+      shape = shape(query);
+    } catch (Exception e) {
+      // the search itself reports invalid CQL
+      return;
+    }
+    SKETCHES.computeIfAbsent(tenantId, t -> new Sketch()).add(table, shape, ms);
+  }
+
+  /**
+   * Same as {@link #record(String, String, String, long)} for the tenant of the request; warm-up
+   * requests (see {@link TenantWarmUp#isWarmUp}) are not counted.
+   */
+  public static void record(Map<String, String> okapiHeaders, String table, String query, long startNanos) {
+    if (!TenantWarmUp.isWarmUp(okapiHeaders)) {
+      record(TenantTool.tenantId(okapiHeaders), table, query, startNanos);
+    }
+  }
+
+  public static QueryStats stats(String tenantId, int limit) {
+    Sketch sketch = SKETCHES.get(tenantId);
+    if (sketch == null) {
+      return new QueryStats().withTenant(tenantId).withTotalQueries(0);
+    }
+    return sketch.stats(limit).withTenant(tenantId);
+  }
+
+  public static void reset(String tenantId) {
+    SKETCHES.remove(tenantId);
+  }
+
+  static final class Shape {
+    final String text;
+    // field + ' ' + relation, for example "title =" or "title sortBy"
+    final Set<String> uses = new TreeSet<>();
+
+    Shape(String text) {
+      this.text = text;
+    }
+  }
+
+  static Shape shape(String query) throws Exception {
+    if (query == null || query.trim().isEmpty()) {
+      return new Shape("");
+    }
+    CQLNode node = new CQLParser().parse(query);
+    StringBuilder text = new StringBuilder();
+    Set<String> uses = new TreeSet<>();
+    describe(node, text, uses);
+    Shape shape = new Shape(text.toString());
+    shape.uses.addAll(uses);
+    return shape;
+  }
+
+  private static void describe(CQLNode node, StringBuilder text, Set<String> uses) {
+    if (node instanceof CQLSortNode) {
+      CQLSortNode sort = (CQLSortNode) node;
+      describe(sort.getSubtree(), text, uses);
+      text.append(" sortBy");
+      for (ModifierSet index : sort.getSortIndexes()) {
+        text.append(' ').append(index.getBase());
+        uses.add(index.getBase() + " sortBy");
+      }
+    } else if (node instanceof CQLPrefixNode) {
+      describe(((CQLPrefixNode) node).getSubtree(), text, uses);
+    } else if (node instanceof CQLBooleanNode) {
+      CQLBooleanNode bool = (CQLBooleanNode) node;
+      String op = node instanceof CQLAndNode ? "and" : node instanceof CQLOrNode ? "or"
+          : node instanceof CQLNotNode ? "not" : "prox";
+      text.append('(');
+      describe(bool.getLeftOperand(), text, uses);
+      text.append(' ').append(op).append(' ');
+      describe(bool.getRightOperand(), text, uses);
+      text.append(')');
+    } else if (node instanceof CQLTermNode) {
+      CQLTermNode term = (CQLTermNode) node;
+      String index = term.getIndex();
+      String relation = term.getRelation().getBase();
+      if ("cql.allRecords".equalsIgnoreCase(index)) {
+        text.append(index);
+        return;
+      }
+      text.append(index).append(relation.matches("[a-z]+") ? " " + relation + " " : relation)
+          .append(placeholder(term.getTerm()));
+      uses.add(index + ' ' + relation);
+    }
+  }
+
+  private static String placeholder(String term) {
+    if (term.isEmpty()) {
+      return "\"\"";
+    }
+    boolean leading = term.startsWith("*");
+    boolean trailing = term.length() > 1 && term.endsWith("*");
+    if ("*".equals(term)) {
+      return "*";
+    }
+    return (leading ? "*" : "") + "?" + (trailing ? "*" : "");
+  }
+
+  /**
+   * Index kinds per table and field, from schema.json: "btree" for index and uniqueIndex,
+   * "text" for ginIndex and fullTextIndex.
+   */
+  static Map<String, Map<String, Set<String>>> indexes() {
+    if (indexes == null) {
+      Map<String, Map<String, Set<String>>> byTable = new HashMap<>();
+      try (InputStream in = QueryAnalytics.class.getClassLoader().getResourceAsStream(SCHEMA_PATH)) {
+        JsonObject schema = new JsonObject(IOUtils.toString(in, StandardCharsets.UTF_8));
+        for (Object t : schema.getJsonArray("tables")) {
+          JsonObject table = (JsonObject) t;
+          Map<String, Set<String>> fields = byTable.computeIfAbsent(table.getString("tableName"), k -> new HashMap<>());
+          addIndexes(fields, table.getJsonArray("index"), "btree");
+          addIndexes(fields, table.getJsonArray("uniqueIndex"), "btree");
+          addIndexes(fields, table.getJsonArray("ginIndex"), "text");
+          addIndexes(fields, table.getJsonArray("fullTextIndex"), "text");
+        }
+      } catch (Exception e) {
+        LOGGER.error("Unable to read " + SCHEMA_PATH + ", no index recommendations", e);
+      }
+      indexes = byTable;
+    }
+    return indexes;
+  }
+
+  private static void addIndexes(Map<String, Set<String>> fields, JsonArray list, String kind) {
+    if (list == null) {
+      return;
+    }
+    for (Object o : list) {
+      String field = ((JsonObject) o).getString("fieldName");
+      fields.computeIfAbsent(field, k -> new HashSet<>()).add(kind);
+    }
+  }
+
+  /**
+   * The kind of index serving a field with a relation, or null when none would.
+   */
+  static String neededIndex(String relation) {
+    if (BTREE_RELATIONS.contains(relation)) {
+      return "btree";
+    }
+    if (TEXT_RELATIONS.contains(relation)) {
+      return "text";
+    }
+    return null;
+  }
+
+  private static final class Entry {
+    private final String table;
+    private final String shape;
+    private final Set<String> uses;
+    private long count;
+    private long totalMs;
+    private long timed;
+    private int maxMs;
+
+    Entry(String table, Shape shape) {
+      this.table = table;
+      this.shape = shape.text;
+      this.uses = shape.uses;
+    }
+  }
+
+  /**
+   * The state of one tenant. Updates are cheap, so one monitor is enough.
+   */
+  private static final class Sketch {
+    private final long[][] counters = new long[DEPTH][WIDTH];
+    private final HashFunction[] hashes = new HashFunction[DEPTH];
+    private final Map<String, Entry> top = new LinkedHashMap<>();
+    // table + ' ' + field + ' ' + relation -> queries using it
+    private final Map<String, Long> fieldUses = new HashMap<>();
+    private long total;
+
+    Sketch() {
+      for (int i = 0; i < DEPTH; i++) {
+        hashes[i] = Hashing.murmur3_32(i);
+      }
+    }
+
+    synchronized void add(String table, Shape shape, int ms) {
+      total++;
+      String key = table + '|' + shape.text;
+      long estimate = Long.MAX_VALUE;
+      for (int i = 0; i < DEPTH; i++) {
+        int slot = Math.floorMod(hashes[i].hashString(key, StandardCharsets.UTF_8).asInt(), WIDTH);
+        estimate = Math.min(estimate, ++counters[i][slot]);
+      }
+      Entry entry = top.get(key);
+      if (entry == null) {
+        if (top.size() >= TOP_K) {
+          Entry smallest = Collections.min(top.values(), (a, b) -> Long.compare(a.count, b.count));
+          if (smallest.count >= estimate) {
+            countFields(table, shape);
+            return;
+          }
+          top.remove(smallest.table + '|' + smallest.shape);
+        }
+        entry = new Entry(table, shape);
+        top.put(key, entry);
+      }
+      entry.count = estimate;
+      entry.totalMs += ms;
+      entry.timed++;
+      entry.maxMs = Math.max(entry.maxMs, ms);
+      countFields(table, shape);
+    }
+
+    private void countFields(String table, Shape shape) {
+      for (String use : shape.uses) {
+        String key = table + ' ' + use;
+        if (fieldUses.containsKey(key) || fieldUses.size() < MAX_FIELDS) {
+          fieldUses.merge(key, 1L, Long::sum);
+        }
+      }
+    }
+
+    synchronized QueryStats stats(int limit) {
+      List<Entry> entries = new ArrayList<>(top.values());
+      entries.sort((a, b) -> Long.compare(b.count, a.count));
+      List<QueryShape> shapes = new ArrayList<>();
+      for (Entry e : entries.subList(0, Math.min(limit, entries.size()))) {
+        shapes.add(new QueryShape()
+            .withTable(e.table)
+            .withShape(e.shape)
+            .withCount((int) e.count)
+            .withAvgMs((int) (e.totalMs / Math.max(1, e.timed)))
+            .withMaxMs(e.maxMs)
+            .withFields(new ArrayList<>(e.uses)));
+      }
+      List<IndexRecommendation> recommendations = new ArrayList<>();
+      Map<String, Map<String, Set<String>>> schema = indexes();
+      List<Map.Entry<String, Long>> uses = new ArrayList<>(fieldUses.entrySet());
+      uses.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+      for (Map.Entry<String, Long> use : uses) {
+        long count = use.getValue();
+        double share = (double) count / total;
+        if (count < MIN_COUNT || share < MIN_SHARE) {
+          continue;
+        }
+        String[] parts = use.getKey().split(" ", 3);
+        String table = parts[0];
+        String field = parts[1];
+        String relation = parts[2];
+        String needed = neededIndex(relation);
+        if (needed == null || "cql.serverChoice".equals(field) || SQL_INDEXED.contains(use.getKey())) {
+          continue;
+        }
+        Set<String> kinds = schema.getOrDefault(table, Collections.emptyMap())
+            .getOrDefault(field, Collections.emptySet());
+        if (!kinds.contains(needed)) {
+          recommendations.add(new IndexRecommendation()
+              .withTable(table)
+              .withField(field)
+              .withRelation(relation)
+              .withCount((int) count)
+              .withShare(share)
+              .withSuggestedIndex("btree".equals(needed) ? "index" : "ginIndex")
+              .withExistingIndexKinds(new ArrayList<>(new TreeSet<>(kinds))));
+        }
+      }
+      return new QueryStats()
+          .withTotalQueries((int) total)
+          .withShapes(shapes)
+          .withRecommendations(recommendations);
+    }
+  }
+}
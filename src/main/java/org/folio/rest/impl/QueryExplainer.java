@@ -0,0 +1,147 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.ExplainedStatement;
+import org.folio.rest.jaxrs.model.QueryExplanation;
+import org.folio.rest.persist.cql.CQLWrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the statements of a search and runs them under EXPLAIN (ANALYZE, BUFFERS), for
+ * /oriole-admin/explain. The statements run in a transaction that is rolled back, under the
+ * statement timeout oriole.query.timeout.explain.ms (see {@link QueryGuard}).
+ */
+public final class QueryExplainer {
+  static final String EXPLAIN = "explain";
+  private static final Pattern INDEX_SCAN =
+      Pattern.compile("(?:Index (?:Only )?Scan(?: Backward)? using|Bitmap Index Scan on) (\\S+)");
+  private static final Pattern FACET =
+      Pattern.compile("([A-Za-z0-9_]+(?:\\[\\])?(?:\\.[A-Za-z0-9_]+(?:\\[\\])?)*)(?::(\\d+))?");
+  // same default as PostgresClient
+  private static final int DEFAULT_FACET_VALUES = 5;
+
+  private QueryExplainer() {
+  }
+
+  /**
+   * The fetch statement with its total, the count run for a page past the end, and one
+   * aggregation per facet, as {@link ReadRouting} runs them.
+   */
+  static List<ExplainedStatement> statements(String table, String projection, CQLWrapper page, CQLWrapper all,
+                                             List<String> facets) {
+    List<ExplainedStatement> statements = new ArrayList<>();
+    String where = all.toString();
+    statements.add(new ExplainedStatement().withName("fetch").withSql(ReadRouting.pageSql(table, projection, page)));
+    statements.add(new ExplainedStatement().withName("count")
+        .withSql(ReadRouting.countSql(table, page)));
+    if (facets != null) {
+      for (String facet : facets) {
+        statements.add(new ExplainedStatement().withName("facet:" + facet).withSql(facetSql(table, where, facet)));
+      }
+    }
+    return statements;
+  }
+
+  /**
+   * The aggregation of a facet as PostgresClient names them: a path of fields, where [] marks
+   * an array whose elements are followed, and optionally :n, the number of values.
+   */
+  static String facetSql(String table, String where, String facet) {
+    Matcher m = FACET.matcher(facet);
+    if (!m.matches()) {
+      throw new IllegalArgumentException("Unsupported facet " + facet);
+    }
+    String[] path = m.group(1).split("\\.");
+    int values = m.group(2) == null ? DEFAULT_FACET_VALUES : Integer.parseInt(m.group(2));
+    StringBuilder from = new StringBuilder("(SELECT " + table + ".jsonb FROM " + table + " " + where + ") r");
+    String value = "r.jsonb";
+    for (int i = 0; i < path.length; i++) {
+      boolean last = i == path.length - 1;
+      if (path[i].endsWith("[]")) {
+        String alias = last ? "v" : "e" + i;
+        from.append(" CROSS JOIN jsonb_array_elements").append(last ? "_text(" : "(").append(value)
+            .append("->'").append(path[i], 0, path[i].length() - 2).append("') AS ").append(alias).append("(value)");
+        value = alias + ".value";
+      } else {
+        value += (last ? "->>'" : "->'") + path[i] + "'";
+      }
+    }
+    return "SELECT " + value + " AS value, count(*) AS count FROM " + from
+        + " GROUP BY 1 ORDER BY count DESC LIMIT " + values;
+  }
+
+  /**
+   * The type of a facet in the result info: the last field of its path.
+   */
+  static String facetType(String facet) {
+    Matcher m = FACET.matcher(facet);
+    if (!m.matches()) {
+      throw new IllegalArgumentException("Unsupported facet " + facet);
+    }
+    String field = m.group(1).substring(m.group(1).lastIndexOf('.') + 1);
+    return field.endsWith("[]") ? field.substring(0, field.length() - 2) : field;
+  }
+
+  /**
+   * Explains the statements one after the other. A statement that fails, for example by running
+   * into the timeout, gets its error; the others are still explained.
+   */
+  public static void explain(Map<String, String> okapiHeaders, Context vertxContext, String query,
+                             List<ExplainedStatement> statements, Handler<AsyncResult<QueryExplanation>> handler) {
+    next(okapiHeaders, vertxContext, statements, 0, () -> {
+      Set<String> indexes = new LinkedHashSet<>();
+      for (ExplainedStatement statement : statements) {
+        indexes.addAll(statement.getIndexes());
+      }
+      handler.handle(Future.succeededFuture(new QueryExplanation()
+          .withQuery(query)
+          .withStatements(statements)
+          .withIndexes(new ArrayList<>(indexes))));
+    });
+  }
+
+  private static void next(Map<String, String> okapiHeaders, Context vertxContext,
+                           List<ExplainedStatement> statements, int i, Runnable done) {
+    if (i == statements.size()) {
+      done.run();
+      return;
+    }
+    ExplainedStatement statement = statements.get(i);
+    String sql = "EXPLAIN (ANALYZE, BUFFERS) " + statement.getSql();
+    ReadRouting.select(okapiHeaders, vertxContext, EXPLAIN, sql, null, reply -> {
+      List<String> plan = new ArrayList<>();
+      if (reply.succeeded()) {
+        for (JsonArray row : reply.result().getResults()) {
+          plan.add(row.getString(0));
+        }
+      } else {
+        statement.setError(reply.cause().getMessage());
+      }
+      statement.setPlan(plan);
+      statement.setIndexes(indexes(plan));
+      next(okapiHeaders, vertxContext, statements, i + 1, done);
+    });
+  }
+
+  static List<String> indexes(List<String> plan) {
+    Set<String> indexes = new LinkedHashSet<>();
+    for (String line : plan) {
+      Matcher m = INDEX_SCAN.matcher(line);
+      while (m.find()) {
+        indexes.add(m.group(1));
+      }
+    }
+    return new ArrayList<>(indexes);
+  }
+}
@@ -0,0 +1,268 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.folio.rest.tools.utils.ValidationHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Statement timeouts per endpoint, so a pathological query does not keep a pooled connection
+ * long after the client gave up. A guarded statement runs in a read-only transaction whose
+ * statement_timeout is oriole.query.timeout.ENDPOINT.ms (default oriole.query.timeout.ms); 0 turns
+ * the timeout off. Should the server not give up in time, for example because the statement waits
+ * on a lock, the backend is cancelled with pg_cancel_backend once the grace period
+ * oriole.query.cancel.grace.ms has passed as well, unless it has finished the transaction since.
+ * Timeouts and cancellations are counted as oriole.query.timeout.ENDPOINT and
+ * oriole.query.cancelled.ENDPOINT.
+ */
+public final class QueryGuard {
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryGuard.class);
+  public static final String SEARCH = "search";
+  public static final String TAGS = "tags";
+  public static final String EZPROXY = "ezproxy";
+  private static final long DEFAULT_TIMEOUT_MS = OrioleConfig.getLong("oriole.query.timeout.ms", 10000);
+  private static final long GRACE_MS = OrioleConfig.getLong("oriole.query.cancel.grace.ms", 1000);
+  // set_config(..., true) is SET LOCAL: the settings end with the transaction, not with the pooled
+  // connection; switching a transaction to read-only is allowed after its first query, too
+  private static final String PREPARE_SQL = "SELECT pg_backend_pid(), now()::text,"
+      + " set_config('statement_timeout', ?, true), set_config('transaction_read_only', 'on', true)";
+  // xact_start is now() of the transaction being run by the backend
+  private static final String CANCEL_SQL = "SELECT pg_cancel_backend(pid) FROM pg_stat_activity"
+      + " WHERE pid = ? AND xact_start = ?::timestamptz AND state = 'active'";
+  private static final String QUERY_CANCELED = "57014";
+
+  private QueryGuard() {
+  }
+
+  public static long timeoutMs(String endpoint) {
+    long fallback = EZPROXY.equals(endpoint) ? Math.max(DEFAULT_TIMEOUT_MS, 60000) : DEFAULT_TIMEOUT_MS;
+    return OrioleConfig.getLong("oriole.query.timeout." + endpoint + ".ms", fallback);
+  }
+
+  /**
+   * Runs one statement on a connection of {@code client} under the endpoint's timeout. Parameters
+   * may be null.
+   */
+  public static void select(Context vertxContext, AsyncSQLClient client, String endpoint, String sql,
+                            JsonArray params, Handler<AsyncResult<ResultSet>> replyHandler) {
+    transaction(vertxContext, client, endpoint, (tx, h) -> tx.run(sql, params, h), replyHandler);
+  }
+
+  /**
+   * Runs the statements one after the other in one transaction, so they read the same snapshot,
+   * each under the endpoint's timeout. Answers with their results in the same order, or with the
+   * first failure.
+   */
+  public static void selectAll(Context vertxContext, AsyncSQLClient client, String endpoint, List<String> sqls,
+                               Handler<AsyncResult<List<ResultSet>>> replyHandler) {
+    transaction(vertxContext, client, endpoint, (tx, h) -> tx.runAll(sqls, new ArrayList<>(), h), replyHandler);
+  }
+
+  private static <T> void transaction(Context vertxContext, AsyncSQLClient client, String endpoint,
+                                      BiConsumer<Transaction, Handler<AsyncResult<T>>> body,
+                                      Handler<AsyncResult<T>> handler) {
+    long timeoutMs = timeoutMs(endpoint);
+    Handler<AsyncResult<T>> replyHandler = LoopMonitor.wrap(handler);
+    client.getConnection(conn -> {
+      if (conn.failed()) {
+        replyHandler.handle(Future.failedFuture(conn.cause()));
+        return;
+      }
+      SQLConnection connection = conn.result();
+      connection.setAutoCommit(false, tx -> {
+        if (tx.failed()) {
+          connection.close();
+          replyHandler.handle(Future.failedFuture(tx.cause()));
+          return;
+        }
+        JsonArray timeout = new JsonArray().add(String.valueOf(Math.max(0, timeoutMs)));
+        connection.queryWithParams(PREPARE_SQL, timeout, prepared -> {
+          if (prepared.failed()) {
+            end(connection, null, Future.failedFuture(prepared.cause()), replyHandler);
+            return;
+          }
+          JsonArray row = prepared.result().getResults().get(0);
+          Transaction transaction = new Transaction(vertxContext, client, endpoint, timeoutMs, connection,
+              row.getInteger(0), row.getString(1));
+          body.accept(transaction, reply -> end(connection, transaction, reply, replyHandler));
+        });
+      });
+    });
+  }
+
+  /**
+   * Read-only; rolling back also drops the local settings. The transaction is marked as over
+   * before its connection goes back to the pool, so a watchdog firing late does not cancel the
+   * next statement of the pooled backend.
+   */
+  private static <T> void end(SQLConnection connection, Transaction transaction, AsyncResult<T> reply,
+                              Handler<AsyncResult<T>> replyHandler) {
+    if (transaction != null) {
+      transaction.active.set(false);
+    }
+    connection.rollback(done -> {
+      connection.close();
+      replyHandler.handle(reply);
+    });
+  }
+
+  /**
+   * For statements that cannot be given a statement_timeout: answers with a timeout failure when
+   * {@code call} has not answered in time and drops its late answer.
+   */
+  public static <T> void deadline(Context vertxContext, String endpoint, Consumer<Handler<AsyncResult<T>>> call,
+                                  Handler<AsyncResult<T>> replyHandler) {
+    long timeoutMs = timeoutMs(endpoint);
+    if (timeoutMs <= 0) {
+      call.accept(replyHandler);
+      return;
+    }
+    boolean[] answered = new boolean[1];
+    long timerId = vertxContext.owner().setTimer(timeoutMs, id -> vertxContext.runOnContext(v -> {
+      if (!answered[0]) {
+        answered[0] = true;
+        StatsTracker.addStatElement("oriole.query.timeout." + endpoint, (int) timeoutMs);
+        replyHandler.handle(Future.failedFuture(new TimeoutException(timeoutMs)));
+      }
+    }));
+    call.accept(reply -> vertxContext.runOnContext(v -> {
+      vertxContext.owner().cancelTimer(timerId);
+      if (!answered[0]) {
+        answered[0] = true;
+        replyHandler.handle(reply);
+      }
+    }));
+  }
+
+  public static boolean isTimeout(Throwable cause) {
+    if (cause instanceof TimeoutException) {
+      return true;
+    }
+    String message = cause == null ? null : cause.getMessage();
+    return message != null && (message.contains(QUERY_CANCELED) || message.contains("statement timeout"));
+  }
+
+  /**
+   * Answers 503 when the cause is a timeout of this class, otherwise like
+   * {@link ValidationHelper#handleError}.
+   */
+  public static void handleError(Throwable cause, String endpoint, Handler<AsyncResult<Response>> asyncResultHandler) {
+    if (isTimeout(cause)) {
+      asyncResultHandler.handle(Future.succeededFuture(Response.status(503)
+          .type(MediaType.TEXT_PLAIN)
+          .entity("The " + endpoint + " query took longer than " + timeoutMs(endpoint) + " ms, try a narrower one")
+          .build()));
+    } else {
+      ValidationHelper.handleError(cause, asyncResultHandler);
+    }
+  }
+
+  /**
+   * A guarded transaction: the backend running it, identified by its process id and the start
+   * of the transaction, and whether the transaction is still going on.
+   */
+  private static final class Transaction {
+    private final Context vertxContext;
+    private final AsyncSQLClient client;
+    private final String endpoint;
+    private final long timeoutMs;
+    private final SQLConnection connection;
+    private final int pid;
+    private final String started;
+    private final AtomicBoolean active = new AtomicBoolean(true);
+
+    Transaction(Context vertxContext, AsyncSQLClient client, String endpoint, long timeoutMs,
+                SQLConnection connection, int pid, String started) {
+      this.vertxContext = vertxContext;
+      this.client = client;
+      this.endpoint = endpoint;
+      this.timeoutMs = timeoutMs;
+      this.connection = connection;
+      this.pid = pid;
+      this.started = started;
+    }
+
+    void run(String sql, JsonArray params, Handler<AsyncResult<ResultSet>> replyHandler) {
+      Handler<AsyncResult<ResultSet>> handler = replyHandler;
+      if (timeoutMs > 0) {
+        long timerId = vertxContext.owner().setTimer(timeoutMs + GRACE_MS, id -> cancel());
+        handler = reply -> {
+          vertxContext.owner().cancelTimer(timerId);
+          if (reply.failed() && isTimeout(reply.cause())) {
+            StatsTracker.addStatElement("oriole.query.timeout." + endpoint, (int) timeoutMs);
+            LOGGER.warn("Statement of " + endpoint + " cancelled after " + timeoutMs + " ms: " + sql);
+          }
+          replyHandler.handle(reply);
+        };
+      }
+      if (params == null || params.isEmpty()) {
+        // simple protocol: a '?' inside a CQL string literal is not taken for a parameter
+        connection.query(sql, handler);
+      } else {
+        connection.queryWithParams(sql, params, handler);
+      }
+    }
+
+    void runAll(List<String> sqls, List<ResultSet> results, Handler<AsyncResult<List<ResultSet>>> replyHandler) {
+      if (results.size() == sqls.size()) {
+        replyHandler.handle(Future.succeededFuture(results));
+        return;
+      }
+      run(sqls.get(results.size()), null, reply -> {
+        if (reply.failed()) {
+          replyHandler.handle(Future.failedFuture(reply.cause()));
+          return;
+        }
+        results.add(reply.result());
+        runAll(sqls, results, replyHandler);
+      });
+    }
+
+    /**
+     * Cancels the backend, but only while it still runs this transaction: by the time the
+     * cancel arrives the connection may have been handed to another request.
+     */
+    private void cancel() {
+      if (!active.get()) {
+        return;
+      }
+      client.getConnection(conn -> {
+        if (conn.failed()) {
+          LOGGER.error("No connection to cancel backend " + pid, conn.cause());
+          return;
+        }
+        conn.result().queryWithParams(CANCEL_SQL, new JsonArray().add(pid).add(started), reply -> {
+          conn.result().close();
+          if (reply.failed()) {
+            LOGGER.error("Cancelling backend " + pid + " failed", reply.cause());
+          } else if (!reply.result().getResults().isEmpty()) {
+            StatsTracker.addStatElement("oriole.query.cancelled." + endpoint, 0);
+            LOGGER.warn("Cancelled backend " + pid + " still running a " + endpoint + " statement");
+          }
+        });
+      });
+    }
+  }
+
+  static final class TimeoutException extends RuntimeException {
+    TimeoutException(long timeoutMs) {
+      super("No answer within " + timeoutMs + " ms");
+    }
+  }
+}
@@ -0,0 +1,346 @@
+package org.folio.rest.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.PostgreSQLClient;
+import io.vertx.ext.sql.ResultSet;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.jaxrs.model.Facet;
+import org.folio.rest.jaxrs.model.FacetValue;
+import org.folio.rest.jaxrs.model.ResultInfo;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.persist.cql.CQLWrapper;
+import org.folio.rest.persist.facets.FacetField;
+import org.folio.rest.persist.interfaces.Results;
+import org.folio.rest.tools.utils.TenantTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Sends read-only queries to a replica when one is configured (oriole.replica.host). A client
+ * that wrote within the last oriole.replica.ryw.ms milliseconds keeps reading from the primary,
+ * so it sees its own writes despite replication lag. A client is the user of the tenant, or the
+ * token when the request has no user id; requests with neither, such as anonymous reads, are
+ * never held on the primary. Everything else, and every write, uses the primary pool from
+ * {@link ApiUtil#getPostgresClient}.
+ * <p>
+ * The recent writers are kept in the memory of the module instance, so the guarantee only holds
+ * for reads that reach the instance that took the write. With several instances behind Okapi, a
+ * read may go to another one and to the lagging replica; run a single instance, or route reads to
+ * the primary (leave oriole.replica.host unset), when clients depend on reading their own writes.
+ */
+public final class ReadRouting {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReadRouting.class);
+  private static final String OKAPI_USER_ID = "X-Okapi-User-Id";
+  private static final String OKAPI_TOKEN = "X-Okapi-Token";
+  private static final String REPLICA_HOST = OrioleConfig.get("oriole.replica.host", null);
+  private static final int REPLICA_PORT = OrioleConfig.getInt("oriole.replica.port", 5432);
+  private static final String REPLICA_DATABASE = OrioleConfig.get("oriole.replica.database",
+      OrioleConfig.get("db.database", "okapi_modules"));
+  private static final String REPLICA_PASSWORD = OrioleConfig.get("oriole.replica.password", null);
+  private static final int REPLICA_POOL_SIZE = OrioleConfig.getInt("oriole.replica.pool.size", 5);
+  private static final long READ_YOUR_WRITES_MS = OrioleConfig.getLong("oriole.replica.ryw.ms", 10000);
+  private static final Map<String, AsyncSQLClient> REPLICAS = new ConcurrentHashMap<>();
+  // the paging CQLWrapper appends to its WHERE and ORDER BY
+  private static final Pattern LIMIT_OFFSET = Pattern.compile("(?:\\s+LIMIT\\s+\\d+)?(?:\\s+OFFSET\\s+\\d+)?\\s*$");
+  private static final RecentWriters RECENT_WRITERS = new RecentWriters(READ_YOUR_WRITES_MS);
+
+  private ReadRouting() {
+  }
+
+  public static boolean replicaConfigured() {
+    return REPLICA_HOST != null;
+  }
+
+  /**
+   * Call at the start of every write handler. Reads by the same user of the tenant, including
+   * the existence checks done by the write itself, then go to the primary for a while.
+   */
+  public static void recordWrite(Map<String, String> okapiHeaders) {
+    if (replicaConfigured()) {
+      RECENT_WRITERS.record(okapiHeaders);
+    }
+  }
+
+  /**
+   * True when the request's reads go to the primary, either because there is no replica or
+   * because the client wrote recently.
+   */
+  public static boolean usesPrimary(Map<String, String> okapiHeaders) {
+    return usesPrimary(replicaConfigured(), RECENT_WRITERS, okapiHeaders);
+  }
+
+  static boolean usesPrimary(boolean replicaConfigured, RecentWriters recentWriters, Map<String, String> okapiHeaders) {
+    return !replicaConfigured || recentWriters.wroteRecently(okapiHeaders);
+  }
+
+  /**
+   * Same as {@link PostgresClient#select(String, JsonArray, Handler)}, on the replica when allowed.
+   */
+  public static void select(Map<String, String> okapiHeaders, Context vertxContext, String sql, JsonArray params,
+                            Handler<AsyncResult<ResultSet>> handler) {
+    Handler<AsyncResult<ResultSet>> replyHandler = LoopMonitor.wrap(handler);
+    AsyncSQLClient replica = replica(okapiHeaders, vertxContext);
+    if (replica == null) {
+      ApiUtil.getPostgresClient(okapiHeaders, vertxContext).select(sql, params, replyHandler);
+    } else {
+      query(replica, sql, params, replyHandler);
+    }
+  }
+
+  public static void select(Map<String, String> okapiHeaders, Context vertxContext, String sql,
+                            Handler<AsyncResult<ResultSet>> replyHandler) {
+    select(okapiHeaders, vertxContext, sql, new JsonArray(), replyHandler);
+  }
+
+  /**
+   * Same as {@link PostgresClient#get(String, Class, String[], CQLWrapper, boolean, boolean, List, Handler)}
+   * with the single field {@code projection AS jsonb}, on the replica when allowed. Facet queries
+   * always go to the primary.
+   */
+  public static <T> void get(Map<String, String> okapiHeaders, Context vertxContext, String table, Class<T> clazz,
+                             String projection, CQLWrapper cql, List<FacetField> facets,
+                             Handler<AsyncResult<Results<T>>> handler) {
+    Handler<AsyncResult<Results<T>>> replyHandler = LoopMonitor.wrap(handler);
+    String[] fields = new String[]{projection + " AS jsonb", "id"};
+    AsyncSQLClient replica = facets == null || facets.isEmpty() ? replica(okapiHeaders, vertxContext) : null;
+    if (replica == null) {
+      ApiUtil.getPostgresClient(okapiHeaders, vertxContext)
+          .get(table, clazz, fields, cql, true, false, facets, replyHandler);
+    } else {
+      getDirect(h -> query(replica, pageSql(table, projection, cql), new JsonArray(), h), clazz,
+          () -> ApiUtil.getPostgresClient(okapiHeaders, vertxContext)
+              .get(table, clazz, fields, cql, true, false, facets, replyHandler),
+          replyHandler);
+    }
+  }
+
+  /**
+   * Same as {@link #get(Map, Context, String, Class, String, CQLWrapper, List, Handler)}, with the
+   * statement timeout of the endpoint (see {@link QueryGuard}). The page with its count and the
+   * aggregation of each facet (see {@link QueryExplainer#facetSql}) run in one guarded transaction,
+   * on the primary too.
+   */
+  public static <T> void get(Map<String, String> okapiHeaders, Context vertxContext, String endpoint, String table,
+                             Class<T> clazz, String projection, CQLWrapper cql, List<String> facets,
+                             Handler<AsyncResult<Results<T>>> replyHandler) {
+    List<String> statements = new ArrayList<>();
+    statements.add(pageSql(table, projection, cql));
+    if (facets != null) {
+      String where = LIMIT_OFFSET.matcher(cql.toString()).replaceFirst("");
+      try {
+        for (String facet : facets) {
+          statements.add(QueryExplainer.facetSql(table, where, facet));
+        }
+      } catch (IllegalArgumentException e) {
+        replyHandler.handle(Future.failedFuture(e));
+        return;
+      }
+    }
+    AsyncSQLClient client = client(okapiHeaders, vertxContext);
+    QueryGuard.selectAll(vertxContext, client, endpoint, statements, reply -> {
+      if (reply.failed()) {
+        replyHandler.handle(Future.failedFuture(reply.cause()));
+        return;
+      }
+      List<Facet> facetResults = new ArrayList<>();
+      for (int i = 1; i < statements.size(); i++) {
+        List<FacetValue> values = new ArrayList<>();
+        for (JsonArray row : reply.result().get(i).getResults()) {
+          values.add(new FacetValue().withValue(row.getString(0)).withCount(row.getLong(1).intValue()));
+        }
+        facetResults.add(new Facet().withType(QueryExplainer.facetType(facets.get(i - 1))).withFacetValues(values));
+      }
+      List<JsonArray> rows = reply.result().get(0).getResults();
+      if (!rows.isEmpty()) {
+        replyHandler.handle(Future.succeededFuture(results(rows, clazz, rows.get(0).getLong(1), facetResults)));
+        return;
+      }
+      // an empty page past the end carries no count
+      QueryGuard.select(vertxContext, client, endpoint, countSql(table, cql), null, count -> {
+        if (count.failed()) {
+          replyHandler.handle(Future.failedFuture(count.cause()));
+          return;
+        }
+        replyHandler.handle(Future.succeededFuture(
+            results(rows, clazz, count.result().getResults().get(0).getLong(0), facetResults)));
+      });
+    });
+  }
+
+  /**
+   * Same as {@link #select(Map, Context, String, JsonArray, Handler)}, with the statement timeout
+   * of the endpoint (see {@link QueryGuard}).
+   */
+  public static void select(Map<String, String> okapiHeaders, Context vertxContext, String endpoint, String sql,
+                            JsonArray params, Handler<AsyncResult<ResultSet>> replyHandler) {
+    QueryGuard.select(vertxContext, client(okapiHeaders, vertxContext), endpoint, sql, params, replyHandler);
+  }
+
+  /**
+   * The statement fetching a page of a search together with the total. The total is computed
+   * once by count_matches (see resource.sql), which reads at most 1000 matches and takes the
+   * planner's estimate beyond; a window count would read every match before the LIMIT, so a
+   * sorted page could not stop after its rows.
+   */
+  static String pageSql(String table, String projection, CQLWrapper cql) {
+    return "SELECT " + projection + "::text, (" + countSql(table, cql) + ") FROM " + table + " " + cql;
+  }
+
+  /**
+   * The total of a search, without its page.
+   */
+  static String countSql(String table, CQLWrapper cql) {
+    String matches = "SELECT 1 FROM " + table + " " + LIMIT_OFFSET.matcher(cql.toString()).replaceFirst("");
+    return "SELECT count_matches(" + ApiUtil.literal(matches) + ")";
+  }
+
+  private static <T> void getDirect(Consumer<Handler<AsyncResult<ResultSet>>> query, Class<T> clazz,
+                                    Runnable onEmpty, Handler<AsyncResult<Results<T>>> replyHandler) {
+    query.accept(reply -> {
+      if (reply.failed()) {
+        replyHandler.handle(Future.failedFuture(reply.cause()));
+        return;
+      }
+      List<JsonArray> rows = reply.result().getResults();
+      if (rows.isEmpty()) {
+        // an empty page past the end carries no count; let the primary compute the total
+        onEmpty.run();
+        return;
+      }
+      replyHandler.handle(Future.succeededFuture(results(rows, clazz, rows.get(0).getLong(1), null)));
+    });
+  }
+
+  private static <T> Results<T> results(List<JsonArray> rows, Class<T> clazz, long total, List<Facet> facets) {
+    List<T> list = new ArrayList<>(rows.size());
+    for (JsonArray row : rows) {
+      list.add(Json.decodeValue(row.getString(0), clazz));
+    }
+    Results<T> results = new Results<>();
+    results.setResults(list);
+    ResultInfo resultInfo = new ResultInfo().withTotalRecords((int) total);
+    if (facets != null) {
+      resultInfo.setFacets(facets);
+    }
+    results.setResultInfo(resultInfo);
+    return results;
+  }
+
+  private static void query(AsyncSQLClient replica, String sql, JsonArray params,
+                            Handler<AsyncResult<ResultSet>> replyHandler) {
+    replica.getConnection(conn -> {
+      if (conn.failed()) {
+        LOGGER.error("No replica connection", conn.cause());
+        replyHandler.handle(Future.failedFuture(conn.cause()));
+        return;
+      }
+      Handler<AsyncResult<ResultSet>> closing = reply -> {
+        conn.result().close();
+        replyHandler.handle(reply);
+      };
+      if (params == null || params.isEmpty()) {
+        // simple protocol: a '?' inside a CQL string literal is not taken for a parameter
+        conn.result().query(sql, closing);
+      } else {
+        conn.result().queryWithParams(sql, params, closing);
+      }
+    });
+  }
+
+  /**
+   * The replica pool when the request may read from it, otherwise the tenant's primary pool.
+   */
+  private static AsyncSQLClient client(Map<String, String> okapiHeaders, Context vertxContext) {
+    AsyncSQLClient replica = replica(okapiHeaders, vertxContext);
+    return replica != null ? replica : ApiUtil.getPostgresClient(okapiHeaders, vertxContext).getClient();
+  }
+
+  /**
+   * The replica pool of the request's tenant, or null when the request has to read from the primary.
+   */
+  private static AsyncSQLClient replica(Map<String, String> okapiHeaders, Context vertxContext) {
+    if (usesPrimary(okapiHeaders)) {
+      return null;
+    }
+    String tenantId = TenantTool.calculateTenantId(okapiHeaders.get(RestVerticle.OKAPI_HEADER_TENANT));
+    return REPLICAS.computeIfAbsent(tenantId, t -> {
+      // log in as the tenant's own role, as PostgresClient does, so unqualified table names resolve
+      String schema = PostgresClient.convertToPsqlStandard(t);
+      JsonObject config = new JsonObject()
+          .put("host", REPLICA_HOST)
+          .put("port", REPLICA_PORT)
+          .put("database", REPLICA_DATABASE)
+          .put("username", schema)
+          .put("password", REPLICA_PASSWORD == null ? schema : REPLICA_PASSWORD)
+          .put("maxPoolSize", REPLICA_POOL_SIZE);
+      LOGGER.info("Reading tenant " + t + " from replica " + REPLICA_HOST + ":" + REPLICA_PORT);
+      return PostgreSQLClient.createNonShared(vertxContext.owner(), config);
+    });
+  }
+
+  /**
+   * The client of the request, tenant/user or tenant token, or null when there is neither a
+   * user id nor a token.
+   */
+  static String writerKey(Map<String, String> okapiHeaders) {
+    String tenant = okapiHeaders.get(RestVerticle.OKAPI_HEADER_TENANT);
+    String user = header(okapiHeaders, OKAPI_USER_ID);
+    if (user != null) {
+      return tenant + "/user/" + user;
+    }
+    String token = header(okapiHeaders, OKAPI_TOKEN);
+    return token == null ? null : tenant + "/token/" + token;
+  }
+
+  private static String header(Map<String, String> okapiHeaders, String name) {
+    for (Map.Entry<String, String> header : okapiHeaders.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+        return header.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Clients that wrote within the read-your-writes window, through this module instance; an entry
+   * expires when its window is over.
+   */
+  static final class RecentWriters {
+    private final Cache<String, Boolean> writers;
+
+    RecentWriters(long windowMs) {
+      writers = CacheBuilder.newBuilder()
+          .expireAfterWrite(windowMs, TimeUnit.MILLISECONDS)
+          .build();
+    }
+
+    void record(Map<String, String> okapiHeaders) {
+      String key = writerKey(okapiHeaders);
+      if (key != null) {
+        writers.put(key, Boolean.TRUE);
+      }
+    }
+
+    boolean wroteRecently(Map<String, String> okapiHeaders) {
+      String key = writerKey(okapiHeaders);
+      return key != null && writers.getIfPresent(key) != null;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import org.folio.okapi.common.ErrorType;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Success;
+import org.folio.rest.persist.PgExceptionUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-record lookups by id or altId, and existence checks, as bound-parameter statements.
+ * The SQL text of each lookup is built once per table and never contains the value, so the
+ * driver's per-connection prepared statement cache parses and plans it once per connection.
+ */
+public final class RecordLookup {
+  private static final String BY_ID = "SELECT jsonb::text FROM %s WHERE id = ?::uuid";
+  private static final String BY_ALT_ID = "SELECT jsonb::text FROM %s WHERE jsonb->>'altId' = ?";
+  private static final String EXISTS = "SELECT EXISTS (SELECT 1 FROM %s WHERE id = ?::uuid)";
+  // one statement for any number of keys: the lists are passed as comma separated text
+  private static final String BY_IDS = "SELECT id::text, jsonb->>'altId', (%s)::text FROM %s"
+      + " WHERE id = ANY (string_to_array(?, ',')::uuid[]) OR jsonb->>'altId' = ANY (string_to_array(?, ','))";
+  private static final Map<String, String> STATEMENTS = new ConcurrentHashMap<>();
+
+  private RecordLookup() {
+  }
+
+  /**
+   * Fetches one record by primary key. Fails with NOT_FOUND when there is none, and with USER
+   * when the id is not a valid UUID.
+   */
+  public static <T> void byId(Map<String, String> okapiHeaders, Context context, String table, Class<T> clazz,
+                              String label, String id, Handler<ExtendedAsyncResult<T>> resp) {
+    one(okapiHeaders, context, statement(BY_ID, table), clazz, label + " " + id, id, resp);
+  }
+
+  public static <T> void byAltId(Map<String, String> okapiHeaders, Context context, String table, Class<T> clazz,
+                                 String label, String altId, Handler<ExtendedAsyncResult<T>> resp) {
+    one(okapiHeaders, context, statement(BY_ALT_ID, table), clazz, label + " " + altId, altId, resp);
+  }
+
+  /**
+   * Fetches the records with any of the ids or altIds in one statement, using the primary key
+   * and the altId index. The result maps both the id and the altId of each record found to the
+   * record, projected by {@code projection}. Ids must be UUIDs and neither list may contain commas.
+   */
+  public static <T> void byIdsOrAltIds(Map<String, String> okapiHeaders, Context context, String table,
+                                       Class<T> clazz, String projection, List<String> ids, List<String> altIds,
+                                       Handler<ExtendedAsyncResult<Map<String, T>>> resp) {
+    String sql = STATEMENTS.computeIfAbsent(BY_IDS + projection + table,
+        k -> String.format(BY_IDS, projection, table));
+    JsonArray params = new JsonArray().add(String.join(",", ids)).add(String.join(",", altIds));
+    ReadRouting.select(okapiHeaders, context, sql, params, reply -> {
+      if (reply.failed()) {
+        resp.handle(failure(reply));
+        return;
+      }
+      Map<String, T> found = new HashMap<>();
+      for (JsonArray row : reply.result().getResults()) {
+        T record = Json.decodeValue(row.getString(2), clazz);
+        found.put(row.getString(0), record);
+        if (row.getString(1) != null) {
+          found.put(row.getString(1), record);
+        }
+      }
+      resp.handle(new Success<>(found));
+    });
+  }
+
+  /**
+   * Succeeds when a record with the id exists, without reading its jsonb.
+   */
+  public static void exists(Map<String, String> okapiHeaders, Context context, String table, String label,
+                            String id, Handler<ExtendedAsyncResult<Void>> resp) {
+    ReadRouting.select(okapiHeaders, context, statement(EXISTS, table), new JsonArray().add(id), reply -> {
+      if (reply.failed()) {
+        resp.handle(failure(reply));
+      } else if (Boolean.TRUE.equals(reply.result().getResults().get(0).getBoolean(0))) {
+        resp.handle(new Success<>(null));
+      } else {
+        resp.handle(new Failure<>(ErrorType.NOT_FOUND, label + " " + id + " not found"));
+      }
+    });
+  }
+
+  private static <T> void one(Map<String, String> okapiHeaders, Context context, String sql, Class<T> clazz,
+                              String what, String value, Handler<ExtendedAsyncResult<T>> resp) {
+    ReadRouting.select(okapiHeaders, context, sql, new JsonArray().add(value), reply -> {
+      if (reply.failed()) {
+        resp.handle(failure(reply));
+        return;
+      }
+      List<JsonArray> rows = reply.result().getResults();
+      if (rows.isEmpty()) {
+        resp.handle(new Failure<>(ErrorType.NOT_FOUND, what + " not found"));
+      } else {
+        resp.handle(new Success<>(Json.decodeValue(rows.get(0).getString(0), clazz)));
+      }
+    });
+  }
+
+  private static <T> Failure<T> failure(AsyncResult<ResultSet> reply) {
+    String error = PgExceptionUtil.badRequestMessage(reply.cause());
+    if (error == null) {
+      return new Failure<>(ErrorType.INTERNAL, "");
+    }
+    return new Failure<>(ErrorType.USER, error);
+  }
+
+  private static String statement(String template, String table) {
+    return STATEMENTS.computeIfAbsent(template + table, k -> String.format(template, table));
+  }
+}
@@ -0,0 +1,96 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.ResourceBulkResult;
+import org.folio.rest.tools.utils.TenantTool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes or changes all resources matching a CQL query, for /oriole/resource-bulk. Each runs as
+ * one statement, so the matches are deleted or changed together; a dry run selects the same rows
+ * instead. The statement reports how many rows it affected and the ids of the first
+ * oriole.bulk.report.max (1000) of them.
+ */
+public final class ResourceBulk {
+  private static final int REPORT_MAX = Math.max(1, OrioleConfig.getInt("oriole.bulk.report.max", 1000));
+
+  private ResourceBulk() {
+  }
+
+  /**
+   * The WHERE condition of the query, without its sortBy.
+   */
+  static String where(String query, String schema) throws Exception {
+    return new ResourceCQLWrapper(ApiUtil.getTranslator(OrioleImpl.RESOURCE_TABLE, schema), query).where();
+  }
+
+  static String deleteSql(String where, boolean dryRun) {
+    String table = OrioleImpl.RESOURCE_TABLE;
+    return report(dryRun
+        ? "SELECT id FROM " + table + " WHERE " + where
+        : "DELETE FROM " + table + " WHERE " + where + " RETURNING id");
+  }
+
+  /**
+   * Statement of an update. Rows the change leaves as they are, such as resources that already
+   * have the tag, are neither written nor reported. The change is computed from the row it writes,
+   * so concurrent updates of a match are kept. The change is inlined as literals rather than bound:
+   * the statement runs with the simple protocol, where a '?' in a string of the CQL query is not
+   * taken for a parameter.
+   */
+  static String updateSql(String where, JsonObject patch, List<String> addTags, List<String> removeTags,
+                          boolean dryRun) {
+    String table = OrioleImpl.RESOURCE_TABLE;
+    // merge patch, tags to add, tags to remove (see resource.sql)
+    String change = "resource_bulk_change(jsonb, " + ApiUtil.literal(patch.encode()) + "::jsonb, "
+        + ApiUtil.literal(new JsonArray(addTags).encode()) + "::jsonb, "
+        + ApiUtil.literal(new JsonArray(removeTags).encode()) + "::jsonb)";
+    String changed = " WHERE (" + where + ") AND jsonb IS DISTINCT FROM " + change;
+    return report(dryRun
+        ? "SELECT id FROM " + table + changed
+        : "UPDATE " + table + " SET jsonb = " + change + changed + " RETURNING id");
+  }
+
+  private static String report(String rows) {
+    // a data-modifying WITH runs to completion whatever the LIMIT of the outer SELECT
+    return "WITH a AS (" + rows + ") SELECT id::text, count(*) OVER () FROM a LIMIT " + REPORT_MAX;
+  }
+
+  /**
+   * Runs a statement built by {@link #deleteSql} or {@link #updateSql} on the primary.
+   */
+  public static void run(Map<String, String> okapiHeaders, Context vertxContext, String query, boolean dryRun,
+                         String sql, Handler<AsyncResult<ResourceBulkResult>> handler) {
+    if (!dryRun) {
+      ReadRouting.recordWrite(okapiHeaders);
+    }
+    ApiUtil.getPostgresClient(okapiHeaders, vertxContext).select(sql, reply -> {
+      if (reply.failed()) {
+        handler.handle(Future.failedFuture(reply.cause()));
+        return;
+      }
+      List<JsonArray> rows = reply.result().getResults();
+      List<String> ids = new ArrayList<>(rows.size());
+      for (JsonArray row : rows) {
+        ids.add(row.getString(0));
+      }
+      int affected = rows.isEmpty() ? 0 : rows.get(0).getLong(1).intValue();
+      if (!dryRun && affected > 0) {
+        ResourceEvents.publishChanged(vertxContext, TenantTool.tenantId(okapiHeaders));
+      }
+      handler.handle(Future.succeededFuture(new ResourceBulkResult()
+          .withQuery(query)
+          .withDryRun(dryRun)
+          .withAffected(affected)
+          .withIds(ids)));
+    });
+  }
+}
@@ -0,0 +1,201 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.persist.Criteria.Limit;
+import org.folio.rest.persist.Criteria.Offset;
+import org.folio.rest.persist.cql.CQLWrapper;
+import org.z3950.zing.cql.CQLAndNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.ModifierSet;
+import org.z3950.zing.cql.cql2pgjson.CQL2PgJSON;
+import org.z3950.zing.cql.cql2pgjson.SqlSelect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CQLWrapper of resource searches that translates some terms itself, to conditions an index of
+ * resource.sql serves, and leaves the rest of the query to CQL2PgJSON. Only terms ANDed at the
+ * top of the query are taken:
+ * <ul>
+ * <li>availability==X matches resources whose availability list has the element X, as stored,
+ * with the containment resource_availability_idx_gin serves. availability=X keeps the word match
+ * of CQL2PgJSON, which ignores case and accents.</li>
+ * <li>terms.subject.term, terms.subject.fastId and terms.subject.id with = or == look the
+ * subject up in the resource_subject join table rather than in the jsonb of every resource.
+ * terms.subject.term== matches the whole subject term, ignoring case, on its btree index;
+ * terms.subject.term= keeps the word match of CQL2PgJSON: every word of the query is a word of
+ * the term, ignoring case and accents.</li>
+ * </ul>
+ * Terms with masking characters are left to CQL2PgJSON.
+ * The conditions are ANDed in front of the WHERE clause CQL2PgJSON generates for the rest, and
+ * the statement is put together from its parts: WHERE, ORDER BY, LIMIT and OFFSET.
+ */
+public class ResourceCQLWrapper extends TitleSortCQLWrapper {
+  private static final String ALL_RECORDS = "cql.allRecords=1";
+
+  private final CQL2PgJSON field;
+  private final Split split;
+  private Limit limit = new Limit();
+  private Offset offset = new Offset();
+
+  public ResourceCQLWrapper(CQL2PgJSON field, String query) {
+    this(field, split(query));
+  }
+
+  private ResourceCQLWrapper(CQL2PgJSON field, Split split) {
+    super(field, split.rest);
+    this.field = field;
+    this.split = split;
+  }
+
+  @Override
+  public CQLWrapper setLimit(Limit limit) {
+    this.limit = limit;
+    return super.setLimit(limit);
+  }
+
+  @Override
+  public CQLWrapper setOffset(Offset offset) {
+    this.offset = offset;
+    return super.setOffset(offset);
+  }
+
+  /**
+   * The WHERE condition of the query, without its sortBy.
+   */
+  public String where() throws Exception {
+    return where(field.toSql(split.rest));
+  }
+
+  private String where(SqlSelect select) {
+    return split.conditions.isEmpty() ? select.getWhere() : split.conditions + " AND (" + select.getWhere() + ")";
+  }
+
+  @Override
+  public String toString() {
+    if (split.conditions.isEmpty()) {
+      return super.toString();
+    }
+    SqlSelect select;
+    try {
+      select = field.toSql(split.rest);
+    } catch (Exception e) {
+      // the statement CQLWrapper builds reports the invalid query
+      return super.toString();
+    }
+    String orderBy = select.getOrderBy();
+    return withTitleSort(" WHERE " + where(select)
+        + (orderBy == null || orderBy.isEmpty() ? "" : " ORDER BY " + orderBy)
+        + limit + offset);
+  }
+
+  /**
+   * The query without the terms translated here, and their conditions.
+   */
+  static final class Split {
+    final String rest;
+    final String conditions;
+
+    Split(String rest, String conditions) {
+      this.rest = rest;
+      this.conditions = conditions;
+    }
+  }
+
+  static Split split(String query) {
+    CQLNode node;
+    try {
+      node = new CQLParser().parse(query);
+    } catch (Exception e) {
+      // CQL2PgJSON reports the invalid query
+      return new Split(query, "");
+    }
+    String sortBy = "";
+    if (node instanceof CQLSortNode) {
+      CQLSortNode sort = (CQLSortNode) node;
+      StringBuilder keys = new StringBuilder();
+      for (ModifierSet index : sort.getSortIndexes()) {
+        keys.append(' ').append(index.toCQL());
+      }
+      sortBy = " sortBy" + keys;
+      node = sort.getSubtree();
+    }
+    List<CQLNode> terms = new ArrayList<>();
+    conjuncts(node, terms);
+    List<String> rest = new ArrayList<>();
+    List<String> conditions = new ArrayList<>();
+    for (CQLNode term : terms) {
+      String condition = term instanceof CQLTermNode ? condition((CQLTermNode) term) : null;
+      if (condition == null) {
+        rest.add("(" + term.toCQL() + ")");
+      } else {
+        conditions.add(condition);
+      }
+    }
+    if (conditions.isEmpty()) {
+      return new Split(query, "");
+    }
+    return new Split((rest.isEmpty() ? ALL_RECORDS : String.join(" and ", rest)) + sortBy,
+        String.join(" AND ", conditions));
+  }
+
+  private static String subject(String match) {
+    return OrioleImpl.RESOURCE_TABLE + ".id IN (SELECT resource_id FROM resource_subject WHERE " + match + ")";
+  }
+
+  /**
+   * Every word of the value is a word of the subject term, ignoring case and accents, as
+   * CQL2PgJSON matches = on a string.
+   */
+  private static String words(String value) {
+    List<String> matches = new ArrayList<>();
+    for (String word : value.trim().split("\\s+")) {
+      String pattern = "(^|[^[:alnum:]])" + word.replaceAll("[.\\[\\]{}()+$|]", "\\\\$0") + "($|[^[:alnum:]])";
+      matches.add("f_unaccent(term) ~* f_unaccent(" + ApiUtil.literal(pattern) + ")");
+    }
+    return String.join(" AND ", matches);
+  }
+
+  private static void conjuncts(CQLNode node, List<CQLNode> terms) {
+    if (node instanceof CQLAndNode) {
+      conjuncts(((CQLAndNode) node).getLeftOperand(), terms);
+      conjuncts(((CQLAndNode) node).getRightOperand(), terms);
+    } else {
+      terms.add(node);
+    }
+  }
+
+  /**
+   * The SQL condition of a term translated here, or null.
+   */
+  private static String condition(CQLTermNode term) {
+    String relation = term.getRelation().getBase();
+    if (!("=".equals(relation) || "==".equals(relation)) || !term.getRelation().getModifiers().isEmpty()) {
+      return null;
+    }
+    String value = term.getTerm();
+    if (value.trim().isEmpty() || value.matches(".*[*?^\\\\].*")) {
+      return null;
+    }
+    switch (term.getIndex()) {
+      case "availability":
+        if (!"==".equals(relation)) {
+          return null;
+        }
+        return OrioleImpl.RESOURCE_TABLE + ".jsonb->'availability' @> "
+            + ApiUtil.literal(new JsonArray().add(value).encode()) + "::jsonb";
+      case "terms.subject.term":
+        return subject("==".equals(relation) ? "lower(term) = lower(" + ApiUtil.literal(value) + ")" : words(value));
+      case "terms.subject.fastId":
+        return subject("fast_id = " + ApiUtil.literal(value));
+      case "terms.subject.id":
+        return subject("subject_id = " + ApiUtil.literal(value));
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+
+/**
+ * Event bus notification sent after resources of a tenant were created, updated or deleted.
+ * The message body is the tenant id.
+ */
+public final class ResourceEvents {
+  public static final String RESOURCE_CHANGED = "org.folio.oriole.resource.changed";
+
+  private ResourceEvents() {
+  }
+
+  public static void publishChanged(Context vertxContext, String tenantId) {
+    vertxContext.owner().eventBus().publish(RESOURCE_CHANGED, tenantId);
+  }
+
+  public static MessageConsumer<String> onChanged(Vertx vertx, Handler<String> handler) {
+    return vertx.eventBus().<String>consumer(RESOURCE_CHANGED, message -> handler.handle(message.body()));
+  }
+}
@@ -0,0 +1,106 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Lets concurrent identical reads share one database query. The first caller of a key runs the
+ * query; callers arriving while it is in flight only wait for its result, which each of them gets
+ * on its own context. Nothing is kept once the query is answered, so this is not a cache. A change
+ * of the tenant's resources detaches the flights in progress, so a read that starts after a write
+ * never gets a result computed before it. oriole.singleflight.enabled=false turns it off.
+ */
+public final class SingleFlight {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlight.class);
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.singleflight.enabled", true);
+  // guarded by itself; flights are short and the critical sections tiny
+  private static final Map<String, Flight> FLIGHTS = new HashMap<>();
+
+  private SingleFlight() {
+  }
+
+  /**
+   * Runs {@code call} unless a call with the same key of the same tenant is in flight, and hands
+   * its result to {@code handler}. The key has to cover everything the result depends on.
+   */
+  public static <T> void run(String tenantId, String key, Context context,
+                             Consumer<Handler<AsyncResult<T>>> call, Handler<AsyncResult<T>> handler) {
+    if (!ENABLED) {
+      call.accept(handler);
+      return;
+    }
+    String flightKey = tenantId + '|' + key;
+    Flight own;
+    synchronized (FLIGHTS) {
+      Flight flight = FLIGHTS.get(flightKey);
+      if (flight != null) {
+        // answered from the leader's callback; timed as a slice of the joining handler
+        flight.waiters.add(new Waiter(context, LoopMonitor.wrap(handler)));
+        own = null;
+      } else {
+        own = new Flight();
+        FLIGHTS.put(flightKey, own);
+      }
+    }
+    if (own == null) {
+      StatsTracker.addStatElement("oriole.singleflight.joined", 0);
+      return;
+    }
+    Handler<AsyncResult<T>> complete = res -> {
+      List<Waiter> waiters;
+      synchronized (FLIGHTS) {
+        FLIGHTS.remove(flightKey, own);
+        // no one can join any more
+        waiters = own.waiters;
+      }
+      handler.handle(res);
+      for (Waiter w : waiters) {
+        @SuppressWarnings("unchecked")
+        Handler<AsyncResult<T>> waiting = (Handler<AsyncResult<T>>) w.handler;
+        w.context.runOnContext(v -> waiting.handle(res));
+      }
+    };
+    try {
+      call.accept(complete);
+    } catch (RuntimeException e) {
+      LOGGER.error("Shared query " + key + " failed", e);
+      complete.handle(Future.failedFuture(e));
+    }
+  }
+
+  /**
+   * Stops new callers from joining the tenant's flights in progress; those still answer the
+   * callers that already joined.
+   */
+  public static void forget(String tenantId) {
+    String prefix = tenantId + '|';
+    synchronized (FLIGHTS) {
+      FLIGHTS.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+  }
+
+  private static final class Flight {
+    private final List<Waiter> waiters = new ArrayList<>();
+  }
+
+  private static final class Waiter {
+    private final Context context;
+    private final Handler<?> handler;
+
+    Waiter(Context context, Handler<?> handler) {
+      this.context = context;
+      this.handler = handler;
+    }
+  }
+}
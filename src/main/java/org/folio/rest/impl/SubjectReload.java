@@ -0,0 +1,159 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.jaxrs.model.SubjectRecord;
+import org.folio.rest.jaxrs.model.SubjectReloadResult;
+import org.folio.rest.persist.PostgresClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Replaces the whole subject vocabulary of a tenant. The records are staged in batches of
+ * set-based INSERT ... SELECT FROM jsonb_array_elements statements, then subject_reload_swap
+ * (see subject.sql) renames the staging table into place, so searches keep reading the old
+ * vocabulary until the new one is complete. A subject keeps the id of the live subject with the
+ * same fastId, so resources that refer to it by id still find it.
+ * <p>
+ * A reload holds an advisory lock of the tenant from before the prepare until after the swap, so
+ * only one reload of a tenant runs at a time across all module instances. The lock is taken on
+ * the connection that runs the whole reload; should the module die, it ends with the connection.
+ * <p>
+ * The whole vocabulary is held in memory while it is loaded, as it comes in one request: a
+ * request may carry at most oriole.subjects.reload.max (1000000) records, several hundred MB of heap.
+ */
+public class SubjectReload {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubjectReload.class);
+  static final int MAX_RECORDS = OrioleConfig.getInt("oriole.subjects.reload.max", 1000000);
+  private static final String STAGING_TABLE = "subject_staging";
+  private static final String STAGE_SQL = "INSERT INTO " + STAGING_TABLE + " (id, jsonb)"
+      + " SELECT coalesce(s.id, (x->>'id')::uuid), x || jsonb_build_object('id', coalesce(s.id, (x->>'id')::uuid))"
+      + " FROM jsonb_array_elements(?::jsonb) x LEFT JOIN " + OrioleImpl.SUBJECT_TABLE + " s"
+      + " ON s.jsonb->>'fastId' = x->>'fastId'";
+  // the tenant's schema is the first of the search path of its role
+  private static final String LOCK_KEY = "hashtext('oriole.subject_reload'), hashtext(current_schema())";
+  private static final String LOCK_SQL = "SELECT pg_try_advisory_lock(" + LOCK_KEY + ")";
+  private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(" + LOCK_KEY + ")";
+
+  private final PostgresClient postgresClient;
+  private final String tenantId;
+  private final int batchSize;
+
+  public SubjectReload(PostgresClient postgresClient, String tenantId, int batchSize) {
+    this.postgresClient = postgresClient;
+    this.tenantId = tenantId;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Stages and swaps in the records. Records without a fastId are skipped, and of several records
+   * with the same fastId the last one is kept. Fails with {@link ReloadRunningException} when a
+   * reload of the tenant is already running.
+   */
+  public void run(List<SubjectRecord> records, Handler<AsyncResult<SubjectReloadResult>> handler) {
+    List<JsonObject> rows = rows(records);
+    postgresClient.getClient().getConnection(conn -> {
+      if (conn.failed()) {
+        handler.handle(Future.failedFuture(conn.cause()));
+        return;
+      }
+      SQLConnection connection = conn.result();
+      connection.query(LOCK_SQL, locked -> {
+        if (locked.failed()) {
+          connection.close();
+          handler.handle(Future.failedFuture(locked.cause()));
+          return;
+        }
+        if (!Boolean.TRUE.equals(locked.result().getResults().get(0).getBoolean(0))) {
+          connection.close();
+          handler.handle(Future.failedFuture(new ReloadRunningException()));
+          return;
+        }
+        reload(connection, records.size(), rows, res -> connection.query(UNLOCK_SQL, unlocked -> {
+          if (unlocked.failed()) {
+            LOGGER.error("Releasing the subject reload lock of " + tenantId + " failed", unlocked.cause());
+          }
+          connection.close();
+          handler.handle(res);
+        }));
+      });
+    });
+  }
+
+  private void reload(SQLConnection connection, int total, List<JsonObject> rows,
+                      Handler<AsyncResult<SubjectReloadResult>> done) {
+    connection.query("SELECT subject_reload_prepare()", prepared -> {
+      if (prepared.failed()) {
+        done.handle(Future.failedFuture(prepared.cause()));
+        return;
+      }
+      stage(connection, rows, 0, staged -> {
+        if (staged.failed()) {
+          LOGGER.error("Staging the subjects of " + tenantId + " failed, the vocabulary is unchanged", staged.cause());
+          done.handle(Future.failedFuture(staged.cause()));
+          return;
+        }
+        connection.query("SELECT subject_reload_swap()", swapped -> {
+          if (swapped.failed()) {
+            done.handle(Future.failedFuture(swapped.cause()));
+            return;
+          }
+          long loaded = swapped.result().getResults().get(0).getLong(0);
+          LOGGER.info("Reloaded " + loaded + " subjects of " + tenantId);
+          done.handle(Future.succeededFuture(new SubjectReloadResult()
+              .withLoaded((int) loaded)
+              .withSkipped(total - rows.size())
+              .withTotalRecords(total)));
+        });
+      });
+    });
+  }
+
+  static List<JsonObject> rows(List<SubjectRecord> records) {
+    Map<String, JsonObject> latest = new LinkedHashMap<>();
+    for (SubjectRecord record : records) {
+      String fastId = record.getFastId();
+      if (fastId == null || fastId.trim().isEmpty()) {
+        continue;
+      }
+      String id = record.getId();
+      if (id == null || id.isEmpty()) {
+        id = UUID.randomUUID().toString();
+      }
+      // a later record replaces an earlier one, but takes the position of the first
+      latest.put(fastId, SubjectUpsert.jsonb(id, record));
+    }
+    return new ArrayList<>(latest.values());
+  }
+
+  private void stage(SQLConnection connection, List<JsonObject> rows, int from, Handler<AsyncResult<Void>> done) {
+    if (from >= rows.size()) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    JsonArray batch = new JsonArray(new ArrayList<>(rows.subList(from, Math.min(from + batchSize, rows.size()))));
+    connection.updateWithParams(STAGE_SQL, new JsonArray().add(batch.encode()), reply -> {
+      if (reply.failed()) {
+        done.handle(Future.failedFuture(reply.cause()));
+      } else {
+        stage(connection, rows, from + batchSize, done);
+      }
+    });
+  }
+
+  static final class ReloadRunningException extends RuntimeException {
+    ReloadRunningException() {
+      super("A subject reload is already running");
+    }
+  }
+}
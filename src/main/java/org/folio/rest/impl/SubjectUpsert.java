@@ -0,0 +1,169 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.SubjectBatchOutcome;
+import org.folio.rest.jaxrs.model.SubjectBatchResult;
+import org.folio.rest.jaxrs.model.SubjectRecord;
+import org.folio.rest.persist.PostgresClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes a batch of subjects with multi-row INSERT ... ON CONFLICT statements keyed on fastId.
+ * An existing subject keeps its id, so loading the same vocabulary twice is a no-op apart from
+ * refreshing the stored values.
+ */
+public class SubjectUpsert {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubjectUpsert.class);
+  static final String CREATED = "created";
+  static final String UPDATED = "updated";
+  static final String SKIPPED = "skipped";
+  static final String FAILED = "failed";
+
+  private final PostgresClient postgresClient;
+  private final int batchSize;
+
+  public SubjectUpsert(PostgresClient postgresClient, int batchSize) {
+    this.postgresClient = postgresClient;
+    this.batchSize = batchSize;
+  }
+
+  public void run(List<SubjectRecord> records, Handler<AsyncResult<SubjectBatchResult>> handler) {
+    SubjectBatchOutcome[] outcomes = new SubjectBatchOutcome[records.size()];
+    // fastId -> index of the record that will be written; a later duplicate replaces an earlier one
+    Map<String, Integer> latest = new LinkedHashMap<>();
+    for (int i = 0; i < records.size(); i++) {
+      SubjectRecord record = records.get(i);
+      String fastId = record.getFastId();
+      if (fastId == null || fastId.trim().isEmpty()) {
+        outcomes[i] = outcome(i, record.getId(), fastId, FAILED, "fastId is required");
+        continue;
+      }
+      Integer previous = latest.put(fastId, i);
+      if (previous != null) {
+        outcomes[previous] = outcome(previous, records.get(previous).getId(), fastId, SKIPPED,
+            "Superseded by record " + i + " with the same fastId");
+      }
+    }
+    List<Integer> pending = new ArrayList<>(latest.values());
+    writeBatch(records, pending, 0, outcomes, done -> handler.handle(Future.succeededFuture(summarize(outcomes))));
+  }
+
+  private void writeBatch(List<SubjectRecord> records, List<Integer> pending, int from,
+                          SubjectBatchOutcome[] outcomes, Handler<AsyncResult<Void>> done) {
+    if (from >= pending.size()) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    List<Integer> chunk = pending.subList(from, Math.min(from + batchSize, pending.size()));
+    StringBuilder sql = new StringBuilder("INSERT INTO " + OrioleImpl.SUBJECT_TABLE + " (id, jsonb) VALUES ");
+    JsonArray params = new JsonArray();
+    for (int n = 0; n < chunk.size(); n++) {
+      SubjectRecord record = records.get(chunk.get(n));
+      String id = record.getId();
+      if (id == null || id.isEmpty()) {
+        id = UUID.randomUUID().toString();
+      }
+      sql.append(n == 0 ? "" : ", ").append("(?::uuid, ?::jsonb)");
+      params.add(id).add(jsonb(id, record).encode());
+    }
+    sql.append(" ON CONFLICT ((jsonb->>'fastId')) DO UPDATE")
+        .append(" SET jsonb = EXCLUDED.jsonb || jsonb_build_object('id', ")
+        .append(OrioleImpl.SUBJECT_TABLE).append(".id)")
+        .append(" RETURNING id::text, jsonb->>'fastId', (xmax = 0)");
+    postgresClient.select(sql.toString(), params, reply -> {
+      if (reply.succeeded()) {
+        Map<String, JsonArray> rows = new LinkedHashMap<>();
+        for (JsonArray row : reply.result().getResults()) {
+          rows.put(row.getString(1), row);
+        }
+        for (Integer i : chunk) {
+          SubjectRecord record = records.get(i);
+          JsonArray row = rows.get(record.getFastId());
+          if (row == null) {
+            outcomes[i] = outcome(i, record.getId(), record.getFastId(), FAILED, "No row was written");
+          } else {
+            outcomes[i] = outcome(i, row.getString(0), record.getFastId(),
+                Boolean.TRUE.equals(row.getBoolean(2)) ? CREATED : UPDATED, null);
+          }
+        }
+      } else {
+        LOGGER.error("Subject batch starting at record " + chunk.get(0) + " failed", reply.cause());
+        for (Integer i : chunk) {
+          SubjectRecord record = records.get(i);
+          outcomes[i] = outcome(i, record.getId(), record.getFastId(), FAILED, reply.cause().getMessage());
+        }
+      }
+      writeBatch(records, pending, from + batchSize, outcomes, done);
+    });
+  }
+
+  /**
+   * The stored subject. Absent values are left out rather than stored as JSON nulls, so they
+   * match the subjects written through /oriole/subjects.
+   */
+  static JsonObject jsonb(String id, SubjectRecord record) {
+    JsonObject jsonb = new JsonObject()
+        .put("id", id)
+        .put("fastId", record.getFastId());
+    if (record.getTerm() != null) {
+      jsonb.put("term", record.getTerm());
+    }
+    if (record.getFacet() != null) {
+      jsonb.put("facet", record.getFacet());
+    }
+    if (record.getUri() != null) {
+      jsonb.put("uri", record.getUri());
+    }
+    return jsonb;
+  }
+
+  private static SubjectBatchOutcome outcome(int index, String id, String fastId, String status, String message) {
+    return new SubjectBatchOutcome()
+        .withIndex(index)
+        .withId(id)
+        .withFastId(fastId)
+        .withStatus(status)
+        .withMessage(message);
+  }
+
+  private static SubjectBatchResult summarize(SubjectBatchOutcome[] outcomes) {
+    int created = 0;
+    int updated = 0;
+    int skipped = 0;
+    int failed = 0;
+    for (SubjectBatchOutcome o : outcomes) {
+      switch (o.getStatus()) {
+        case CREATED:
+          created++;
+          break;
+        case UPDATED:
+          updated++;
+          break;
+        case SKIPPED:
+          skipped++;
+          break;
+        default:
+          failed++;
+      }
+    }
+    return new SubjectBatchResult()
+        .withOutcomes(Arrays.asList(outcomes))
+        .withCreated(created)
+        .withUpdated(updated)
+        .withSkipped(skipped)
+        .withFailed(failed)
+        .withTotalRecords(outcomes.length);
+  }
+}
@@ -0,0 +1,224 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.jaxrs.model.WarmUpStatus;
+import org.folio.rest.jaxrs.model.WarmUpTenant;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.monitor.StatsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Warms up a tenant before it takes traffic: fills its connection pool, loads the schemas and
+ * CQL translators, and runs the public search, item, tag, library and EZProxy handlers a few
+ * times so their code paths are compiled. Runs for every existing tenant when the verticle is
+ * deployed and for a tenant when it is enabled. Failures are logged and never block start-up
+ * for longer than oriole.warmup.timeout.ms. The requests carry a header only this module instance
+ * can set (see {@link #isWarmUp}), so they bypass admission control and are left out of the query
+ * analytics and the event loop statistics.
+ */
+public final class TenantWarmUp {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TenantWarmUp.class);
+  static final String RUNNING = "running";
+  static final String DONE = "done";
+  static final String FAILED = "failed";
+  private static final boolean ENABLED = OrioleConfig.getBoolean("oriole.warmup.enabled", true);
+  private static final long TIMEOUT_MS = OrioleConfig.getLong("oriole.warmup.timeout.ms", 60000);
+  private static final int ROUNDS = OrioleConfig.getInt("oriole.warmup.rounds", 3);
+  private static final int CONNECTIONS = OrioleConfig.getInt("oriole.warmup.connections", 4);
+  static final String TENANT_SCHEMAS_SQL =
+      "SELECT substring(nspname FROM '^(.*)_mod_oriole$') FROM pg_namespace WHERE nspname LIKE '%\\_mod\\_oriole'";
+  static final String WARM_UP_HEADER = "x-oriole-warm-up";
+  // a per-instance secret, so a client cannot mark its requests as warm-up
+  private static final String WARM_UP_TOKEN = UUID.randomUUID().toString();
+  private static final Map<String, WarmUpTenant> TENANTS = new ConcurrentHashMap<>();
+  private static final AtomicInteger IN_PROGRESS = new AtomicInteger();
+  private static volatile Integer startupDurationMs;
+
+  private TenantWarmUp() {
+  }
+
+  /**
+   * Warms up every tenant that has a schema of this module, one after the other.
+   */
+  public static void warmUpAll(Vertx vertx, Context context, Handler<AsyncResult<Void>> done) {
+    if (!ENABLED) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    long start = System.nanoTime();
+    IN_PROGRESS.incrementAndGet();
+    long[] timer = new long[1];
+    Handler<AsyncResult<Void>> finish = once(res -> {
+      vertx.cancelTimer(timer[0]);
+      startupDurationMs = (int) ((System.nanoTime() - start) / 1000000);
+      IN_PROGRESS.decrementAndGet();
+      StatsTracker.addStatElement("oriole.warmup", startupDurationMs);
+      LOGGER.info("Warm-up of " + TENANTS.size() + " tenant(s) took " + startupDurationMs + " ms");
+      done.handle(res);
+    });
+    timer[0] = vertx.setTimer(TIMEOUT_MS, id -> {
+      LOGGER.warn("Warm-up did not finish within " + TIMEOUT_MS + " ms, accepting requests anyway");
+      finish.handle(Future.succeededFuture());
+    });
+    PostgresClient.getInstance(vertx).select(TENANT_SCHEMAS_SQL, reply -> {
+      if (reply.failed()) {
+        LOGGER.warn("Unable to list tenants for warm-up", reply.cause());
+        finish.handle(Future.succeededFuture());
+        return;
+      }
+      List<String> tenants = new ArrayList<>();
+      for (JsonArray row : reply.result().getResults()) {
+        tenants.add(row.getString(0));
+      }
+      warmUpEach(vertx, context, tenants, 0, finish);
+    });
+  }
+
+  private static void warmUpEach(Vertx vertx, Context context, List<String> tenants, int index,
+                                 Handler<AsyncResult<Void>> done) {
+    if (index >= tenants.size()) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    warmUp(vertx, context, tenants.get(index), res -> warmUpEach(vertx, context, tenants, index + 1, done));
+  }
+
+  /**
+   * Warms up one tenant. Always succeeds; the outcome is recorded in {@link #status()}.
+   */
+  public static void warmUp(Vertx vertx, Context context, String tenantId, Handler<AsyncResult<Void>> done) {
+    if (!ENABLED) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    long start = System.nanoTime();
+    WarmUpTenant state = new WarmUpTenant().withTenant(tenantId).withStatus(RUNNING);
+    TENANTS.put(tenantId, state);
+    IN_PROGRESS.incrementAndGet();
+    long[] timer = new long[1];
+    Handler<AsyncResult<Void>> finish = once(res -> {
+      vertx.cancelTimer(timer[0]);
+      int ms = (int) ((System.nanoTime() - start) / 1000000);
+      state.setDurationMs(ms);
+      if (res.succeeded()) {
+        state.setStatus(DONE);
+        LOGGER.info("Warm-up of tenant " + tenantId + " took " + ms + " ms");
+      } else {
+        state.setStatus(FAILED);
+        state.setMessage(res.cause().getMessage());
+        LOGGER.warn("Warm-up of tenant " + tenantId + " failed after " + ms + " ms", res.cause());
+      }
+      StatsTracker.addStatElement("oriole.warmup." + tenantId, ms);
+      IN_PROGRESS.decrementAndGet();
+      done.handle(Future.succeededFuture());
+    });
+    timer[0] = vertx.setTimer(TIMEOUT_MS,
+        id -> finish.handle(Future.failedFuture("Timed out after " + TIMEOUT_MS + " ms")));
+    openPool(vertx, tenantId, pool -> {
+      if (pool.failed()) {
+        finish.handle(pool);
+        return;
+      }
+      runHandlers(vertx, context, tenantId, 0, finish);
+    });
+  }
+
+  /**
+   * Whether the request is one of the warm-up, not traffic.
+   */
+  public static boolean isWarmUp(Map<String, String> okapiHeaders) {
+    return WARM_UP_TOKEN.equals(okapiHeaders.get(WARM_UP_HEADER));
+  }
+
+  public static boolean isReady() {
+    return IN_PROGRESS.get() == 0;
+  }
+
+  public static WarmUpStatus status() {
+    List<WarmUpTenant> tenants = new ArrayList<>(TENANTS.values());
+    Collections.sort(tenants, (a, b) -> a.getTenant().compareTo(b.getTenant()));
+    return new WarmUpStatus()
+        .withReady(isReady())
+        .withDurationMs(startupDurationMs)
+        .withTenants(tenants);
+  }
+
+  /**
+   * Runs enough concurrent statements that the pool opens several connections.
+   */
+  private static void openPool(Vertx vertx, String tenantId, Handler<AsyncResult<Void>> done) {
+    PostgresClient client = PostgresClient.getInstance(vertx, tenantId);
+    AtomicInteger pending = new AtomicInteger(CONNECTIONS);
+    Handler<AsyncResult<Void>> finish = once(done);
+    for (int i = 0; i < CONNECTIONS; i++) {
+      client.select("SELECT 1", reply -> {
+        if (reply.failed()) {
+          finish.handle(Future.failedFuture(reply.cause()));
+        } else if (pending.decrementAndGet() == 0) {
+          finish.handle(Future.succeededFuture());
+        }
+      });
+    }
+  }
+
+  private static void runHandlers(Vertx vertx, Context context, String tenantId, int round,
+                                  Handler<AsyncResult<Void>> done) {
+    if (round >= ROUNDS) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    Map<String, String> headers = new HashMap<>();
+    headers.put(RestVerticle.OKAPI_HEADER_TENANT, tenantId);
+    headers.put(WARM_UP_HEADER, WARM_UP_TOKEN);
+    // the constructors load the CQL validation schemas and set the id field of the tenant's client
+    OrioleImpl oriole = new OrioleImpl(vertx, tenantId);
+    LibrariesImpl libraries = new LibrariesImpl(vertx, tenantId);
+    EzproxyImpl ezproxy = new EzproxyImpl(vertx, tenantId);
+    List<Consumer<Handler<AsyncResult<Response>>>> calls = new ArrayList<>();
+    calls.add(h -> oriole.getOrioleDatabases(null, 0, 10, new ArrayList<>(), "en", headers, h, context));
+    calls.add(h -> oriole.getOrioleDatabases("title=a*", 0, 10, new ArrayList<>(), "en", headers, h, context));
+    calls.add(h -> oriole.getOrioleResources("title=a*", 0, 10, new ArrayList<>(), "en", headers, h, context));
+    calls.add(h -> oriole.getOrioleResourcesByResourceId(UUID.randomUUID().toString(), "en", headers, h, context));
+    calls.add(h -> oriole.getOrioleTags(headers, h, context));
+    calls.add(h -> libraries.getOrioleLibraries(null, 0, 10, "en", headers, h, context));
+    calls.add(h -> ezproxy.getEzproxy(headers, h, context));
+    runCalls(calls, 0, res -> runHandlers(vertx, context, tenantId, round + 1, done));
+  }
+
+  private static void runCalls(List<Consumer<Handler<AsyncResult<Response>>>> calls, int index,
+                               Handler<AsyncResult<Void>> done) {
+    if (index >= calls.size()) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    // responses are not checked: an empty tenant answers 404 or an empty list, which warms up just as well
+    LoopMonitor.untimed(() -> calls.get(index).accept(res -> runCalls(calls, index + 1, done)));
+  }
+
+  private static <T> Handler<AsyncResult<T>> once(Handler<AsyncResult<T>> handler) {
+    AtomicInteger calls = new AtomicInteger();
+    return res -> {
+      if (calls.getAndIncrement() == 0) {
+        handler.handle(res);
+      }
+    };
+  }
+}
@@ -0,0 +1,37 @@
+package org.folio.rest.impl;
+
+import org.folio.rest.persist.cql.CQLWrapper;
+import org.z3950.zing.cql.cql2pgjson.CQL2PgJSON;
+
+import java.util.regex.Pattern;
+
+/**
+ * CQLWrapper of resource searches that sorts "sortBy title" on the resource.title_sort column
+ * (see resource.sql) instead of the title expression CQL2PgJSON generates, so a sorted page can
+ * be read off resource_title_sort_idx. Statements whose ORDER BY looks different are left alone.
+ */
+public class TitleSortCQLWrapper extends CQLWrapper {
+  static final String SORT_COLUMN = OrioleImpl.RESOURCE_TABLE + ".title_sort";
+  // lower(f_unaccent(resource.jsonb->>'title')), possibly truncated by left(..., 600)
+  private static final Pattern TITLE_ORDER = Pattern.compile(
+      "(?:left\\()?lower\\((?:\\w+\\.)?f_unaccent\\(" + OrioleImpl.RESOURCE_TABLE
+      + "\\.jsonb->>'title'\\)\\)(?:\\s*,\\s*\\d+\\))?");
+  private static final String ORDER_BY = " ORDER BY ";
+
+  public TitleSortCQLWrapper(CQL2PgJSON field, String query) {
+    super(field, query);
+  }
+
+  @Override
+  public String toString() {
+    return withTitleSort(super.toString());
+  }
+
+  static String withTitleSort(String sql) {
+    int orderBy = sql.lastIndexOf(ORDER_BY);
+    if (orderBy < 0) {
+      return sql;
+    }
+    return sql.substring(0, orderBy) + TITLE_ORDER.matcher(sql.substring(orderBy)).replaceAll(SORT_COLUMN);
+  }
+}
@@ -0,0 +1,6 @@
+-- The rules that used to be hard-coded in EzproxyImpl; only inserted when the tenant has none yet.
+INSERT INTO ${myuniversity}_${mymodule}.ezproxy_rules (id, jsonb)
+  VALUES ('7e3f1a52-4c2b-4d6e-9a41-0c5b8e2d9f10',
+          '{"avoidDomains": ["jhu.edu", "library.jhu.edu", "mse.jhu.edu"],
+            "omitDatabases": ["JHU05048", "JHU04485", "JHU02980", "JHU03588", "JHU04456", "JHU03659", "JHU04935"]}')
+  ON CONFLICT (id) DO NOTHING;
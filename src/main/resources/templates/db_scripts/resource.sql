@@ -71,14 +71,31 @@ $$ LANGUAGE plpgsql IMMUTABLE ;
 -- ALTER TABLE ${myuniversity}_${mymodule}.resource ADD column keywords tsvector;
 -- create index idx_keyword_full_text on ${myuniversity}_${mymodule}.resource using gin(keywords);
 
+-- True when the value is or contains a string, i.e. contributes to the keywords
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.jsonb_has_text(input jsonb) RETURNS boolean AS $$
+  SELECT coalesce(jsonb_typeof(input) IN ('string', 'object', 'array')
+    AND EXISTS (SELECT 1 FROM ${myuniversity}_${mymodule}.extract_text_elements(input)), false);
+$$ LANGUAGE sql IMMUTABLE;
+
 CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_set_keywords()
   returns trigger
 AS $$
 DECLARE
   keywords text;
 BEGIN
+  -- keywords are made of the text values only: keep them when no changed top-level member
+  -- holds text before or after, e.g. when a merge patch only toggles proxy
+  IF TG_OP = 'UPDATE' AND OLD.jsonb ? 'keywords' AND NOT EXISTS (
+      SELECT 1 FROM jsonb_each(NEW.jsonb - 'keywords') n
+        FULL JOIN jsonb_each(OLD.jsonb - 'keywords') o USING (key)
+      WHERE n.value IS DISTINCT FROM o.value
+        AND (${myuniversity}_${mymodule}.jsonb_has_text(n.value) OR ${myuniversity}_${mymodule}.jsonb_has_text(o.value))) THEN
+    NEW.jsonb = jsonb_set(NEW.jsonb, '{keywords}', OLD.jsonb->'keywords', true);
+    RETURN NEW;
+  END IF;
 --   NEW.keywords = to_tsvector('english', ${myuniversity}_${mymodule}.combine_keyword_element(NEW.jsonb));
-  keywords = replace(${myuniversity}_${mymodule}.combine_keyword_element(NEW.jsonb), '"', ' ');
+  -- a merge patch keeps the stored keywords member: leave it out, or its words are added again
+  keywords = replace(${myuniversity}_${mymodule}.combine_keyword_element(NEW.jsonb - 'keywords'), '"', ' ');
   NEW.jsonb = jsonb_set(NEW.jsonb, '{keywords}', to_jsonb(keywords), true);
 --   NEW.keywords = to_tsvector('English', NEW.jsonb::text);
   RETURN NEW;
@@ -101,3 +118,267 @@ CREATE OR REPLACE VIEW ${myuniversity}_${mymodule}.tag_view AS
 GRANT SELECT ON ${myuniversity}_${mymodule}.tag_view TO ${myuniversity}_${mymodule};
 
 
+-- Normalized resource <-> subject pairs, one row per distinct subject of a resource.
+-- Kept in step with resource.jsonb->'terms' by the trigger below, inside the same
+-- transaction as the resource write.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.resource_subject (
+  resource_id uuid NOT NULL REFERENCES ${myuniversity}_${mymodule}.resource (id) ON DELETE CASCADE,
+  subject_key text NOT NULL,
+  subject_id text,
+  fast_id text,
+  term text,
+  facet text,
+  category text,
+  score numeric,
+  PRIMARY KEY (resource_id, subject_key)
+);
+CREATE INDEX IF NOT EXISTS resource_subject_subject_id_idx
+  ON ${myuniversity}_${mymodule}.resource_subject (subject_id);
+CREATE INDEX IF NOT EXISTS resource_subject_fast_id_idx
+  ON ${myuniversity}_${mymodule}.resource_subject (fast_id);
+CREATE INDEX IF NOT EXISTS resource_subject_term_idx
+  ON ${myuniversity}_${mymodule}.resource_subject (lower(term));
+GRANT ALL ON ${myuniversity}_${mymodule}.resource_subject TO ${myuniversity}_${mymodule};
+
+-- Subjects are identified by fastId, falling back to the lower-cased term
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_subject_rows(rid uuid, input jsonb)
+  RETURNS SETOF ${myuniversity}_${mymodule}.resource_subject AS $$
+  SELECT DISTINCT ON (subject_key)
+         rid, subject_key, t->'subject'->>'id', t->'subject'->>'fastId', t->'subject'->>'term',
+         t->'subject'->>'facet', t->>'category', (t->>'score')::numeric
+  FROM (
+    SELECT t, coalesce(t->'subject'->>'fastId', lower(t->'subject'->>'term')) AS subject_key
+    FROM jsonb_array_elements(CASE jsonb_typeof(input->'terms') WHEN 'array' THEN input->'terms' ELSE '[]' END) t
+  ) terms
+  WHERE subject_key IS NOT NULL
+  ORDER BY subject_key, (t->>'score')::numeric DESC NULLS LAST;
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_sync_subjects()
+  returns trigger
+AS $$
+BEGIN
+  IF TG_OP = 'UPDATE' AND NEW.jsonb->'terms' IS NOT DISTINCT FROM OLD.jsonb->'terms' THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP = 'UPDATE' THEN
+    DELETE FROM ${myuniversity}_${mymodule}.resource_subject WHERE resource_id = NEW.id;
+  END IF;
+  INSERT INTO ${myuniversity}_${mymodule}.resource_subject
+    SELECT * FROM ${myuniversity}_${mymodule}.resource_subject_rows(NEW.id, NEW.jsonb);
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS sync_resource_subjects_trigger
+  ON ${myuniversity}_${mymodule}.resource;
+CREATE TRIGGER sync_resource_subjects_trigger
+  AFTER INSERT OR UPDATE
+  ON ${myuniversity}_${mymodule}.resource
+  FOR each row EXECUTE PROCEDURE ${myuniversity}_${mymodule}.resource_sync_subjects();
+
+-- Backfill resources written before the join table existed
+INSERT INTO ${myuniversity}_${mymodule}.resource_subject
+  SELECT s.* FROM ${myuniversity}_${mymodule}.resource r,
+       ${myuniversity}_${mymodule}.resource_subject_rows(r.id, r.jsonb) s
+  ON CONFLICT DO NOTHING;
+
+-- Per-subject resource counts for subject browse. Maintained incrementally from
+-- resource_subject, so counts follow resource inserts, updates and deletes.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.subject_count (
+  subject_key text PRIMARY KEY,
+  fast_id text,
+  term text,
+  facet text,
+  resource_count integer NOT NULL DEFAULT 0,
+  score_sum numeric NOT NULL DEFAULT 0,
+  score_count integer NOT NULL DEFAULT 0
+);
+CREATE INDEX IF NOT EXISTS subject_count_resource_count_idx
+  ON ${myuniversity}_${mymodule}.subject_count (resource_count DESC);
+CREATE INDEX IF NOT EXISTS subject_count_term_idx
+  ON ${myuniversity}_${mymodule}.subject_count (lower(term));
+CREATE INDEX IF NOT EXISTS subject_count_facet_idx
+  ON ${myuniversity}_${mymodule}.subject_count (facet);
+GRANT ALL ON ${myuniversity}_${mymodule}.subject_count TO ${myuniversity}_${mymodule};
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_subject_count()
+  returns trigger
+AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    INSERT INTO ${myuniversity}_${mymodule}.subject_count AS c
+        (subject_key, fast_id, term, facet, resource_count, score_sum, score_count)
+      VALUES (NEW.subject_key, NEW.fast_id, NEW.term, NEW.facet, 1,
+              coalesce(NEW.score, 0), CASE WHEN NEW.score IS NULL THEN 0 ELSE 1 END)
+      ON CONFLICT (subject_key) DO UPDATE
+      SET fast_id = EXCLUDED.fast_id,
+          term = EXCLUDED.term,
+          facet = EXCLUDED.facet,
+          resource_count = c.resource_count + 1,
+          score_sum = c.score_sum + EXCLUDED.score_sum,
+          score_count = c.score_count + EXCLUDED.score_count;
+  ELSE
+    UPDATE ${myuniversity}_${mymodule}.subject_count
+      SET resource_count = resource_count - 1,
+          score_sum = score_sum - coalesce(OLD.score, 0),
+          score_count = score_count - CASE WHEN OLD.score IS NULL THEN 0 ELSE 1 END
+      WHERE subject_key = OLD.subject_key;
+    DELETE FROM ${myuniversity}_${mymodule}.subject_count
+      WHERE subject_key = OLD.subject_key AND resource_count <= 0;
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS resource_subject_count_trigger
+  ON ${myuniversity}_${mymodule}.resource_subject;
+CREATE TRIGGER resource_subject_count_trigger
+  AFTER INSERT OR DELETE
+  ON ${myuniversity}_${mymodule}.resource_subject
+  FOR each row EXECUTE PROCEDURE ${myuniversity}_${mymodule}.resource_subject_count();
+
+-- Fill from the join table when the counts are new or empty, e.g. on the upgrade that adds
+-- them; afterwards the trigger keeps them exact and upgrades leave them alone
+DO $$
+BEGIN
+  IF NOT EXISTS (SELECT 1 FROM ${myuniversity}_${mymodule}.subject_count) THEN
+    INSERT INTO ${myuniversity}_${mymodule}.subject_count
+      SELECT subject_key, max(fast_id), max(term), max(facet), count(*),
+             coalesce(sum(score), 0), count(score)
+      FROM ${myuniversity}_${mymodule}.resource_subject
+      GROUP BY subject_key;
+  END IF;
+END $$;
+
+-- Per-library database lists: containment lookups on availability, plus a partial
+-- index (in title order, see resource_unrestricted_title_sort_idx below) for resources that are
+-- available everywhere
+CREATE INDEX IF NOT EXISTS resource_availability_idx_gin
+  ON ${myuniversity}_${mymodule}.resource USING gin ((jsonb->'availability') jsonb_path_ops);
+DROP INDEX IF EXISTS ${myuniversity}_${mymodule}.resource_unrestricted_title_idx;
+
+
+-- Public projection of a resource: drops keywords and any access restriction marked
+-- private, so anonymous reads never fetch passwords out of the database
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_public(input jsonb) RETURNS jsonb AS $$
+  SELECT CASE WHEN jsonb_typeof(input->'accessRestrictions') = 'array' THEN
+    (input - 'keywords') || jsonb_build_object('accessRestrictions', coalesce(
+      (SELECT jsonb_agg(ar) FROM jsonb_array_elements(input->'accessRestrictions') ar
+        WHERE coalesce((ar->>'private')::boolean, false) = false), '[]'::jsonb))
+  ELSE input - 'keywords'
+  END;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Exact altId lookups (GET by altId, last altId when numbering new resources)
+CREATE INDEX IF NOT EXISTS resource_altid_idx
+  ON ${myuniversity}_${mymodule}.resource ((jsonb->>'altId'));
+
+-- Title sort key: case and accents folded, leading punctuation and a leading English article
+-- dropped, so "The Lancet" files under L. Searches sorted by title order by this column
+-- (see TitleSortCQLWrapper) and can walk the btree index instead of sorting every match.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.title_sort_key(title text) RETURNS text AS $$
+  SELECT regexp_replace(
+           regexp_replace(
+             regexp_replace(lower(${myuniversity}_${mymodule}.f_unaccent(coalesce(title, ''))), '^[^[:alnum:]]+', ''),
+             '^(the|an|a)\s+', ''),
+           '^[^[:alnum:]]+', '');
+$$ LANGUAGE sql IMMUTABLE;
+
+ALTER TABLE ${myuniversity}_${mymodule}.resource ADD COLUMN IF NOT EXISTS title_sort text;
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_set_title_sort()
+  returns trigger
+AS $$
+BEGIN
+  NEW.title_sort = ${myuniversity}_${mymodule}.title_sort_key(NEW.jsonb->>'title');
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS set_resource_title_sort_trigger
+  ON ${myuniversity}_${mymodule}.resource;
+CREATE TRIGGER set_resource_title_sort_trigger
+  BEFORE INSERT OR UPDATE
+  ON ${myuniversity}_${mymodule}.resource
+  FOR each row EXECUTE PROCEDURE ${myuniversity}_${mymodule}.resource_set_title_sort();
+
+-- Fill the key of resources written before the column existed. The key is computed here, so the
+-- keyword, subject and metadata triggers, which would rewrite every resource for nothing, are
+-- disabled for the backfill; it only runs while keys are missing.
+DO $$
+BEGIN
+  IF EXISTS (SELECT 1 FROM ${myuniversity}_${mymodule}.resource WHERE title_sort IS NULL) THEN
+    ALTER TABLE ${myuniversity}_${mymodule}.resource DISABLE TRIGGER USER;
+    UPDATE ${myuniversity}_${mymodule}.resource
+      SET title_sort = ${myuniversity}_${mymodule}.title_sort_key(jsonb->>'title')
+      WHERE title_sort IS NULL;
+    ALTER TABLE ${myuniversity}_${mymodule}.resource ENABLE TRIGGER USER;
+  END IF;
+END $$;
+
+CREATE INDEX IF NOT EXISTS resource_title_sort_idx
+  ON ${myuniversity}_${mymodule}.resource (title_sort);
+CREATE INDEX IF NOT EXISTS resource_unrestricted_title_sort_idx
+  ON ${myuniversity}_${mymodule}.resource (title_sort)
+  WHERE coalesce(jsonb->'availability', '[]'::jsonb) = '[]'::jsonb;
+
+-- Number of rows a statement returns: exact up to 1000, the planner's estimate above. Pages of a
+-- search report it as their total (see ReadRouting.pageSql), so a page sorted off an index does
+-- not have to read every match to count them.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.count_matches(matches text) RETURNS bigint AS $$
+DECLARE
+  exact bigint;
+  plan json;
+BEGIN
+  EXECUTE 'SELECT count(*) FROM (' || matches || ' LIMIT 1001) m' INTO exact;
+  IF exact <= 1000 THEN
+    RETURN exact;
+  END IF;
+  EXECUTE 'EXPLAIN (FORMAT JSON) ' || matches INTO plan;
+  RETURN greatest((plan->0->'Plan'->>'Plan Rows')::bigint, exact);
+END;
+$$ LANGUAGE plpgsql STABLE;
+
+-- JSON Merge Patch (RFC 7396): members of the patch replace those of the target, null
+-- members are removed, objects are merged recursively. Used by PATCH /oriole/resources/{id}
+-- to update a resource in one statement.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.jsonb_merge_patch(target jsonb, patch jsonb) RETURNS jsonb AS $$
+BEGIN
+  IF jsonb_typeof(patch) IS DISTINCT FROM 'object' THEN
+    RETURN patch;
+  END IF;
+  RETURN coalesce((
+    SELECT jsonb_object_agg(key, CASE WHEN p.value IS NULL THEN t.value
+                                      ELSE ${myuniversity}_${mymodule}.jsonb_merge_patch(t.value, p.value) END)
+    FROM jsonb_each(CASE jsonb_typeof(target) WHEN 'object' THEN target ELSE '{}' END) t
+      FULL JOIN jsonb_each(patch) p USING (key)
+    WHERE p.value IS NULL OR jsonb_typeof(p.value) <> 'null'), '{}');
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+-- Field-level change of a resource for POST /oriole/resource-bulk/update: a merge patch,
+-- then tags added to and removed from tags.tagList (kept sorted and distinct). The keywords
+-- member is left out, for resource_set_keywords to rebuild or keep
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.resource_bulk_change(input jsonb, patch jsonb,
+    add_tags jsonb, remove_tags jsonb) RETURNS jsonb AS $$
+DECLARE
+  result jsonb = ${myuniversity}_${mymodule}.jsonb_merge_patch(input - 'keywords', coalesce(patch, '{}') - 'keywords');
+BEGIN
+  IF jsonb_array_length(coalesce(add_tags, '[]')) = 0 AND jsonb_array_length(coalesce(remove_tags, '[]')) = 0 THEN
+    RETURN result;
+  END IF;
+  RETURN jsonb_set(
+    CASE jsonb_typeof(result->'tags') WHEN 'object' THEN result ELSE jsonb_set(result, '{tags}', '{}') END,
+    '{tags,tagList}',
+    coalesce((
+      SELECT jsonb_agg(tag ORDER BY tag) FROM (
+        SELECT jsonb_array_elements_text(CASE jsonb_typeof(result->'tags'->'tagList')
+                                           WHEN 'array' THEN result->'tags'->'tagList' ELSE '[]' END)
+        UNION
+        SELECT jsonb_array_elements_text(coalesce(add_tags, '[]'))
+        EXCEPT
+        SELECT jsonb_array_elements_text(coalesce(remove_tags, '[]'))
+      ) t (tag)), '[]'));
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
@@ -0,0 +1,80 @@
+-- Subjects are keyed on their FAST identifier. Repeated single-record loads may have left
+-- duplicates behind, which the unique index below cannot be built over. Rather than dropping
+-- subjects on an upgrade, the upgrade that would build the index fails and names the
+-- duplicates, to be merged or deleted through /oriole/subjects first.
+DO $$
+DECLARE
+  duplicates text;
+BEGIN
+  IF to_regclass('${myuniversity}_${mymodule}.subject_fastid_idx_unique') IS NULL THEN
+    SELECT string_agg(fast_id, ', ') INTO duplicates FROM (
+      SELECT jsonb->>'fastId' AS fast_id FROM ${myuniversity}_${mymodule}.subject
+      WHERE jsonb->>'fastId' IS NOT NULL
+      GROUP BY 1 HAVING count(*) > 1 ORDER BY 1 LIMIT 20) d;
+    IF duplicates IS NOT NULL THEN
+      RAISE EXCEPTION 'Several subjects have the same fastId, merge or delete them before upgrading: %',
+        duplicates;
+    END IF;
+  END IF;
+END $$;
+
+-- Target of ON CONFLICT ((jsonb->>'fastId')) in the batch upsert
+CREATE UNIQUE INDEX IF NOT EXISTS subject_fastid_idx_unique
+  ON ${myuniversity}_${mymodule}.subject ((jsonb->>'fastId'));
+
+-- Full reload of the vocabulary (PUT /oriole/batch/subjects). The new rows go into
+-- subject_staging, a copy of subject with its defaults, keys and indexes, while readers keep
+-- using subject. The swap then replaces subject by renaming, under a lock held only for the
+-- catalog changes; indexes keep their names and triggers and grants are carried over.
+-- Both run as the owner of the schema objects.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.subject_reload_prepare() RETURNS void AS $$
+BEGIN
+  DROP TABLE IF EXISTS ${myuniversity}_${mymodule}.subject_staging;
+  CREATE TABLE ${myuniversity}_${mymodule}.subject_staging (LIKE ${myuniversity}_${mymodule}.subject INCLUDING ALL);
+  GRANT ALL ON ${myuniversity}_${mymodule}.subject_staging TO ${myuniversity}_${mymodule};
+END;
+$$ LANGUAGE plpgsql SECURITY DEFINER SET search_path = pg_catalog, pg_temp;
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.subject_reload_swap() RETURNS bigint AS $$
+DECLARE
+  idx record;
+  live_names text[] = '{}';
+  staged_names text[] = '{}';
+  triggers text[];
+  def text;
+  loaded bigint;
+BEGIN
+  ANALYZE ${myuniversity}_${mymodule}.subject_staging;
+  LOCK TABLE ${myuniversity}_${mymodule}.subject IN ACCESS EXCLUSIVE MODE;
+  -- pair each live index with the staged index of the same definition
+  FOR idx IN
+    SELECT DISTINCT ON (l.relname) l.relname AS live_name, s.relname AS staged_name
+    FROM pg_index li JOIN pg_class l ON l.oid = li.indexrelid,
+         pg_index si JOIN pg_class s ON s.oid = si.indexrelid
+    WHERE li.indrelid = '${myuniversity}_${mymodule}.subject'::regclass
+      AND si.indrelid = '${myuniversity}_${mymodule}.subject_staging'::regclass
+      AND regexp_replace(pg_get_indexdef(li.indexrelid), 'INDEX \S+ ON \S+', 'INDEX ON')
+        = regexp_replace(pg_get_indexdef(si.indexrelid), 'INDEX \S+ ON \S+', 'INDEX ON')
+  LOOP
+    live_names = live_names || idx.live_name::text;
+    staged_names = staged_names || idx.staged_name::text;
+  END LOOP;
+  SELECT array_agg(pg_get_triggerdef(t.oid)) INTO triggers FROM pg_trigger t
+    WHERE t.tgrelid = '${myuniversity}_${mymodule}.subject'::regclass AND NOT t.tgisinternal;
+  SELECT count(*) INTO loaded FROM ${myuniversity}_${mymodule}.subject_staging;
+
+  DROP TABLE ${myuniversity}_${mymodule}.subject;
+  ALTER TABLE ${myuniversity}_${mymodule}.subject_staging RENAME TO subject;
+  FOR i IN 1 .. coalesce(array_length(live_names, 1), 0) LOOP
+    EXECUTE format('ALTER INDEX %I.%I RENAME TO %I', '${myuniversity}_${mymodule}', staged_names[i], live_names[i]);
+  END LOOP;
+  FOREACH def IN ARRAY coalesce(triggers, '{}') LOOP
+    EXECUTE def;
+  END LOOP;
+  GRANT ALL ON ${myuniversity}_${mymodule}.subject TO ${myuniversity}_${mymodule};
+  RETURN loaded;
+END;
+$$ LANGUAGE plpgsql SECURITY DEFINER SET search_path = pg_catalog, pg_temp;
+
+GRANT EXECUTE ON FUNCTION ${myuniversity}_${mymodule}.subject_reload_prepare() TO ${myuniversity}_${mymodule};
+GRANT EXECUTE ON FUNCTION ${myuniversity}_${mymodule}.subject_reload_swap() TO ${myuniversity}_${mymodule};
@@ -0,0 +1,53 @@
+package org.folio.rest.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ApiUtil#getCQL} plus rendering of the WHERE clause, which is when the CQL is parsed
+ * and translated. Queries are the shapes the search UI sends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CqlTranslationBenchmark {
+
+  @Param({
+      "cql.allRecords=1 sortBy title",
+      "title=medline*",
+      "keywords=\"heart disease\" sortBy title",
+      "(title=nurs* or altTitle=nurs*) and availability=welch",
+      "terms.subject.term=\"Public health\" and tags.tagList=medicine sortBy title/sort.ascending"
+  })
+  public String query;
+
+  private String schema;
+
+  @Setup
+  public void setUp() throws Exception {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream("ramls/schemas/resource.json")) {
+      schema = IOUtils.toString(in, "UTF-8");
+    }
+  }
+
+  @Benchmark
+  public String getCql() throws Exception {
+    return ApiUtil.getResourceCQL(query, 10, 0, schema).toString();
+  }
+}
@@ -27,6 +27,7 @@ import static com.jayway.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 
 @RunWith(VertxUnitRunner.class)
 public class EZProxyImplTest {
@@ -327,4 +328,110 @@ public class EZProxyImplTest {
                 .body(containsString("HJ journals.sagepub.com"))
                 .body(containsString("HJ sk.sagepub.com"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void canReplaceRulesAndAvoidSubdomainsWithoutRestart() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        // a new tenant starts with the default rules
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/ezproxy/rules")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"jhu.edu\""))
+                .body(containsString("\"JHU05048\""));
+        // add a resource
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(sage1)
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .get("/ezproxy")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("Title SAGE Journals Online (JHU03917)"));
+        // avoid the parent domain of journals.sagepub.com and omit the database
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .body("{\"avoidDomains\":[\"SAGEpub.com\"],\"omitDatabases\":[\"JHU03917\"]}")
+                .put("/ezproxy/rules")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .get("/ezproxy")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(not(containsString("sagepub.com")));
+        // a public suffix only matches itself, not the domains registered under it
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(sage1.replace("fef6d613-9d8a-41c5-873d-b6ad000dcafe", "c0c0c0c0-9d8a-41c5-873d-b6ad000dcafe")
+                        .replace("JHU03917", "JHU09001")
+                        .replace("https://journals.sagepub.com/", "https://journals.cambridge.co.uk/"))
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .body("{\"avoidDomains\":[\"SAGEpub.com\",\"co.uk\",\"ac.uk\"],\"omitDatabases\":[\"JHU03917\"]}")
+                .put("/ezproxy/rules")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .get("/ezproxy")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("HJ journals.cambridge.co.uk"))
+                .body(not(containsString("sagepub.com")));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/ezproxy/rules")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"SAGEpub.com\""))
+                .body(not(containsString("\"jhu.edu\"")));
+    }
+}
@@ -0,0 +1,139 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.rest.jaxrs.model.EzproxyPublisherStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class EzproxyPublisherTest {
+    private Vertx vertx;
+    private Context context;
+    private Path dir;
+    private Path file;
+    private final AtomicReference<String> content = new AtomicReference<>("Title A\n");
+    private final AtomicInteger generated = new AtomicInteger();
+    private final Consumer<Handler<AsyncResult<String>>> generator = h -> {
+        generated.incrementAndGet();
+        h.handle(Future.succeededFuture(content.get()));
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        dir = Files.createTempDirectory("ezproxy");
+        file = dir.resolve("databases.txt");
+    }
+
+    @After
+    public void tearDown(TestContext context) throws Exception {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        Files.deleteIfExists(dir);
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void debouncesABurstAndSkipsUnchangedContent() throws Exception {
+        EzproxyPublisher publisher = new EzproxyPublisher(vertx, context, "test", file, 200, 10000, generator);
+        context.runOnContext(v -> publisher.publish());
+        await(() -> publisher.currentStatus().getWrites() == 1);
+        assertEquals("Title A\n", read());
+        long modified = file.toFile().lastModified();
+
+        // a burst of changes with the same content: one run, and the file is left alone
+        for (int i = 0; i < 5; i++) {
+            context.runOnContext(v -> publisher.changed());
+        }
+        await(() -> publisher.currentStatus().getRegenerations() == 2);
+        Thread.sleep(400);
+        EzproxyPublisherStatus status = publisher.currentStatus();
+        assertEquals(2, generated.get());
+        assertEquals(2, status.getRegenerations().intValue());
+        assertEquals(1, status.getWrites().intValue());
+        assertEquals(1, status.getSkipped().intValue());
+        assertEquals(0, status.getFailures().intValue());
+        assertEquals(modified, file.toFile().lastModified());
+
+        // changed content replaces the file, without leaving the temporary file behind
+        content.set("Title B\n");
+        context.runOnContext(v -> publisher.changed());
+        await(() -> publisher.currentStatus().getWrites() == 2);
+        assertEquals("Title B\n", read());
+        assertNotNull(publisher.currentStatus().getLastHash());
+        assertEquals(1, dir.toFile().list().length);
+    }
+
+    @Test
+    public void flushesAfterTheMaxDelayDuringAStreamOfChanges() throws Exception {
+        EzproxyPublisher publisher = new EzproxyPublisher(vertx, context, "test", file, 300, 600, generator);
+        long periodic = vertx.setPeriodic(100, id -> context.runOnContext(v -> {
+            content.set("Title " + System.nanoTime() + "\n");
+            publisher.changed();
+        }));
+        try {
+            // the debounce alone would never fire while changes keep coming every 100 ms
+            await(() -> publisher.currentStatus().getWrites() >= 2);
+        } finally {
+            vertx.cancelTimer(periodic);
+        }
+    }
+
+    @Test
+    public void comparesWithTheFileLeftByAPreviousRun() throws Exception {
+        Files.write(file, "Title A\n".getBytes(StandardCharsets.UTF_8));
+        EzproxyPublisher publisher = new EzproxyPublisher(vertx, context, "test", file, 200, 10000, generator);
+        context.runOnContext(v -> publisher.publish());
+        await(() -> publisher.currentStatus().getRegenerations() == 1);
+        assertEquals(0, publisher.currentStatus().getWrites().intValue());
+        assertEquals(1, publisher.currentStatus().getSkipped().intValue());
+    }
+
+    @Test
+    public void countsFailures() throws Exception {
+        EzproxyPublisher publisher = new EzproxyPublisher(vertx, context, "test", file, 200, 10000,
+                h -> h.handle(Future.failedFuture(new IllegalStateException("no database"))));
+        context.runOnContext(v -> publisher.publish());
+        await(() -> publisher.currentStatus().getFailures() == 1);
+        assertEquals("no database", publisher.currentStatus().getLastError());
+        assertTrue(!file.toFile().exists());
+    }
+
+    private String read() throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < until);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.folio.rest.impl;
+
+import org.folio.rest.jaxrs.model.EzproxyRules;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EzproxyRuleMatcherTest {
+    private final EzproxyRuleMatcher rules = new EzproxyRuleMatcher(new EzproxyRules()
+            .withAvoidDomains(Arrays.asList("jhu.edu", "*.sagepub.com", "co.uk", "ac.uk"))
+            .withOmitDatabases(Arrays.asList("JHU05048")));
+
+    @Test
+    public void avoidsDomainsAndTheirSubdomains() {
+        assertTrue(rules.avoids("jhu.edu"));
+        assertTrue(rules.avoids("Library.JHU.edu"));
+        assertTrue(rules.avoids("journals.sagepub.com"));
+        assertFalse(rules.avoids("notjhu.edu"));
+        assertFalse(rules.avoids("edu"));
+        assertFalse(rules.avoids(null));
+    }
+
+    @Test
+    public void matchesPublicSuffixesExactly() {
+        assertTrue(rules.avoids("co.uk"));
+        assertFalse(rules.avoids("journals.cambridge.co.uk"));
+        assertFalse(rules.avoids("www.ox.ac.uk"));
+    }
+
+    @Test
+    public void omitsDatabases() {
+        assertTrue(rules.omits("JHU05048"));
+        assertFalse(rules.omits("JHU00001"));
+        assertFalse(rules.omits(null));
+    }
+}
@@ -4,6 +4,7 @@ import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Header;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -27,6 +28,7 @@ import static com.jayway.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(VertxUnitRunner.class)
 public class LibrariesImplTest {
@@ -142,4 +144,195 @@ public class LibrariesImplTest {
                 .body(containsString("welch"))
                 .body(containsString("\"totalRecords\" : 1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRegistryFollowsWrites() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        // loads the (empty) snapshot
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(library)
+                .post("/oriole-libraries")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries?query=name==WELCH")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(library.replace("welch", "homewood"))
+                .put("/oriole-libraries/11111111-1111-1111-a111-111111111111")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("homewood"));
+        // other CQL is still answered by the database
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries?query=name=home*")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .delete("/oriole-libraries/11111111-1111-1111-a111-111111111111")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(404);
+    }
+
+    @Test
+    public void testLibraryDatabases() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(library)
+                .post("/oriole-libraries")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        String[][] resources = {
+                {"11111111-1111-1111-a111-111111111111", "[\"welch\"]"},
+                {"22222222-2222-2222-a222-222222222222", "[]"},
+                {"33333333-3333-3333-a333-333333333333", "[\"homewood\"]"}};
+        for (String[] r : resources) {
+            postResource(r[0], r[1]);
+        }
+        // welch only, plus resources available everywhere
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111/databases?includeUnrestricted=false")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+        // a new resource invalidates the cached list
+        postResource("44444444-4444-4444-a444-444444444444", "[\"welch\"]");
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 3"));
+        // sorted like sortBy title of /oriole/resources: a leading article is left out
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("title", "The Atlas").put("url", "https://example.org/atlas")
+                        .put("availability", new JsonArray().add("welch")).encode())
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        String body = given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/11111111-1111-1111-a111-111111111111/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 4"))
+                .extract().body().asString();
+        assertTrue(body, body.indexOf("The Atlas") < body.indexOf("Database "));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-libraries/99111111-1111-1111-a111-111111111199/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(404);
+    }
+
+    private void postResource(String id, String availability) {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"id\" : \"" + id + "\", \"title\" : \"Database " + id + "\", "
+                        + "\"url\" : \"https://example.org/" + id + "\", \"availability\" : " + availability + "}")
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+    }
+}
@@ -0,0 +1,66 @@
+package org.folio.rest.impl;
+
+import org.folio.rest.jaxrs.model.Library;
+import org.folio.rest.jaxrs.model.LibraryCollection;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LibraryRegistryTest {
+    // in name order, as the snapshot is loaded
+    private final List<Library> libraries = Arrays.asList(
+            new Library().withId("11111111-1111-1111-a111-111111111111").withName("Eisenhower"),
+            new Library().withId("22222222-2222-2222-a222-222222222222").withName("Mudd"),
+            new Library().withId("33333333-3333-3333-a333-333333333333").withName("Welch Médical"));
+
+    @Test
+    public void answersOnlySimpleQueries() {
+        assertTrue(LibraryRegistry.answers(null));
+        assertTrue(LibraryRegistry.answers("cql.allRecords=1"));
+        assertTrue(LibraryRegistry.answers("cql.allRecords=1 sortBy name/sort.descending"));
+        assertTrue(LibraryRegistry.answers("name==welch"));
+        assertTrue(LibraryRegistry.answers("id==22222222-2222-2222-a222-222222222222"));
+        assertFalse(LibraryRegistry.answers("name=welch"));
+        assertFalse(LibraryRegistry.answers("name==wel*"));
+        assertFalse(LibraryRegistry.answers("name==welch or name==mudd"));
+        assertFalse(LibraryRegistry.answers("cql.allRecords=1 sortBy id"));
+        assertFalse(LibraryRegistry.answers("metadata.createdDate>2020"));
+        assertFalse(LibraryRegistry.answers("name==("));
+    }
+
+    @Test
+    public void pagesMatchesOfTheSnapshot() {
+        LibraryCollection all = LibraryRegistry.page(libraries, null, 1, 10);
+        assertEquals(3, all.getTotalRecords().intValue());
+        assertEquals(Arrays.asList("Mudd", "Welch Médical"), names(all));
+
+        LibraryCollection descending =
+                LibraryRegistry.page(libraries, "cql.allRecords=1 sortBy name/sort.descending", 0, 2);
+        assertEquals(Arrays.asList("Welch Médical", "Mudd"), names(descending));
+
+        LibraryCollection welch = LibraryRegistry.page(libraries, "name==\"WELCH MEDICAL\"", 0, 10);
+        assertEquals(1, welch.getTotalRecords().intValue());
+        assertEquals(0, LibraryRegistry.page(libraries, "name==welch", 0, 10).getTotalRecords().intValue());
+        assertEquals(0, LibraryRegistry.page(libraries, null, 5, 10).getLibraries().size());
+    }
+
+    @Test
+    public void findsById() {
+        assertEquals("Mudd", LibraryRegistry.byId(libraries, "22222222-2222-2222-A222-222222222222").getName());
+        assertNull(LibraryRegistry.byId(libraries, "99999999-9999-9999-a999-999999999999"));
+    }
+
+    private static List<String> names(LibraryCollection collection) {
+        String[] names = new String[collection.getLibraries().size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = collection.getLibraries().get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+}
@@ -0,0 +1,220 @@
+package org.folio.rest.impl;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Header;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.PomReader;
+import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class LinkCheckerTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinkCheckerTest.class);
+    private static Vertx vertx;
+    private static Async async;
+    private static String moduleId;
+    private static int stubPort;
+
+    private static final String TENANT = "test";
+    private final Header TENANT_HEADER = new Header("X-Okapi-Tenant", TENANT);
+    private final Header CONTENT_TYPE_HEADER = new Header("Content-Type", "application/json");
+    private final Header ACCEPT_HEADER = new Header("Accept", "application/json");
+
+    @Before
+    public void setUp(TestContext context) {
+        Locale.setDefault(Locale.US);
+        // read at the start of every run
+        System.setProperty("oriole.linkcheck.timeout.ms", "1000");
+        System.setProperty("oriole.linkcheck.host.interval.ms", "0");
+        vertx = Vertx.vertx();
+        String moduleName = PomReader.INSTANCE.getModuleName().replaceAll("_", "-");
+        String moduleVersion = PomReader.INSTANCE.getVersion();
+        moduleId = moduleName + "-" + moduleVersion;
+        LOGGER.info("Test setup starting for " + moduleId);
+        try {
+            PostgresClient.setIsEmbedded(true);
+            PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+        } catch (IOException e) {
+            e.printStackTrace();
+            context.fail(e);
+            return;
+        }
+        // stands in for the sites of the resources
+        stubPort = NetworkUtils.nextFreePort();
+        vertx.createHttpServer().requestHandler(request -> {
+            switch (request.path()) {
+                case "/ok":
+                    request.response().end("ok");
+                    break;
+                case "/no-head":
+                    request.response().setStatusCode(request.method() == HttpMethod.HEAD ? 405 : 200).end();
+                    break;
+                case "/moved":
+                    request.response().setStatusCode(301).putHeader("Location", "/ok").end();
+                    break;
+                case "/slow":
+                    // never answers
+                    break;
+                default:
+                    request.response().setStatusCode(404).end();
+            }
+        }).listen(stubPort, context.asyncAssertSuccess());
+        int port = NetworkUtils.nextFreePort();
+        DeploymentOptions options = new DeploymentOptions().setConfig(
+                new JsonObject().put("http.port", port).put(HttpClientMock2.MOCK_MODE, "true"));
+        vertx.deployVerticle(RestVerticle.class.getName(), options, context.asyncAssertSuccess());
+        RestAssured.port = port;
+        LOGGER.info("link checker test: setup done. Using port " + port);
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        System.clearProperty("oriole.linkcheck.timeout.ms");
+        System.clearProperty("oriole.linkcheck.host.interval.ms");
+        async = context.async();
+        vertx.close(context.asyncAssertSuccess(res -> {
+            PostgresClient.stopEmbeddedPostgres();
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void canCheckLinksAndQueryResults() throws InterruptedException {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .get("/oriole-admin/link-check")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(404);
+        String[] paths = {"ok", "no-head", "moved", "gone", "slow"};
+        for (String path : paths) {
+            String resource = new JsonObject()
+                    .put("title", "Link " + path)
+                    .put("url", "http://localhost:" + stubPort + "/" + path)
+                    .encode();
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body(resource)
+                    .post("/oriole/resources")
+                    .then()
+                    .log()
+                    .ifValidationFails()
+                    .statusCode(201);
+        }
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .post("/oriole-admin/link-check")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(202)
+                .body(containsString("\"status\" : \"running\""));
+        boolean done = false;
+        for (int i = 0; i < 60 && !done; i++) {
+            Thread.sleep(500);
+            done = given().header(TENANT_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .get("/oriole-admin/link-check")
+                    .then()
+                    .statusCode(200)
+                    .extract().body().asString().contains("\"status\" : \"done\"");
+        }
+        assertTrue("link check did not finish", done);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/link-check")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"total\" : 5"))
+                .body(containsString("\"checked\" : 5"))
+                .body(containsString("\"failed\" : 2"));
+        // /ok, the redirect to it, and /no-head through the GET fallback
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "status=ok")
+                .get("/oriole/link-checks")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 3"))
+                .body(containsString("\"method\" : \"GET\""))
+                .body(containsString("\"lastOk\""));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "status=broken")
+                .get("/oriole/link-checks")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"))
+                .body(containsString("/gone"))
+                .body(containsString("\"httpStatus\" : 404"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "status=timeout")
+                .get("/oriole/link-checks")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"))
+                .body(containsString("/slow"));
+        given().header(TENANT_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .queryParam("query", "nosuchfield=1")
+                .get("/oriole/link-checks")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(400);
+    }
+}
@@ -0,0 +1,97 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.Handler;
+import org.folio.rest.jaxrs.model.BlockedSample;
+import org.folio.rest.jaxrs.model.EventLoopHandler;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoopMonitorTest {
+
+    @Test
+    public void bucketsByUpperBound() {
+        assertEquals(0, LoopMonitor.bucket(TimeUnit.MICROSECONDS.toNanos(300)));
+        assertEquals(0, LoopMonitor.bucket(TimeUnit.MILLISECONDS.toNanos(1)));
+        assertEquals(1, LoopMonitor.bucket(TimeUnit.MILLISECONDS.toNanos(1) + 1));
+        assertEquals(LoopMonitor.BUCKETS_MS.length, LoopMonitor.bucket(TimeUnit.SECONDS.toNanos(60)));
+    }
+
+    @Test
+    public void countsNestedSlicesOnce() {
+        for (int i = 0; i < 3; i++) {
+            LoopMonitor.run("test.outer", () -> LoopMonitor.run("test.inner", () -> { }));
+        }
+        Handler<String> callback = LoopMonitor.wrap("test.outer", s -> { });
+        callback.handle("reply");
+        EventLoopHandler outer = handler("test.outer");
+        assertEquals(4, outer.getCount().intValue());
+        assertEquals(0, outer.getBlocked().intValue());
+        assertEquals(LoopMonitor.BUCKETS_MS.length + 1, outer.getHistogram().size());
+        assertNull(handler("test.inner"));
+    }
+
+    @Test
+    public void timesCallbacksAsSlicesOfTheCallingHandler() {
+        Handler<String>[] callback = new Handler[1];
+        LoopMonitor.run("test.caller", () -> callback[0] = LoopMonitor.wrap(s -> { }));
+        callback[0].handle("reply");
+        callback[0].handle("reply");
+        assertEquals(3, handler("test.caller").getCount().intValue());
+
+        // outside of a slice the callback is left alone
+        Handler<String> plain = s -> { };
+        assertTrue(LoopMonitor.wrap(plain) == plain);
+    }
+
+    @Test
+    public void leavesUntimedWorkOut() {
+        Handler<String>[] callbacks = new Handler[2];
+        LoopMonitor.untimed(() -> {
+            LoopMonitor.run("test.untimed", () -> { });
+            callbacks[0] = LoopMonitor.wrap("test.untimed", s -> { });
+            callbacks[1] = LoopMonitor.wrap(s -> LoopMonitor.run("test.untimed", () -> { }));
+        });
+        callbacks[0].handle("reply");
+        callbacks[1].handle("reply");
+        assertNull(handler("test.untimed"));
+    }
+
+    @Test
+    public void keepsStacksOfBlockingSlices() {
+        LoopMonitor.start();
+        LoopMonitor.run("test.blocking", () -> sleep(LoopMonitor.THRESHOLD_MS + 200));
+        EventLoopHandler blocking = handler("test.blocking");
+        assertEquals(1, blocking.getBlocked().intValue());
+        assertTrue(blocking.getMaxMs() >= LoopMonitor.THRESHOLD_MS);
+        BlockedSample sample = blocking.getSamples().get(0);
+        assertEquals(Thread.currentThread().getName(), sample.getThread());
+        assertTrue(sample.getStack().toString(), sample.getStack().toString().contains("LoopMonitorTest"));
+
+        LoopMonitor.reset();
+        assertNull(handler("test.blocking"));
+        assertNotNull(LoopMonitor.stats().getHandlers());
+    }
+
+    private static EventLoopHandler handler(String name) {
+        for (EventLoopHandler handler : LoopMonitor.stats().getHandlers()) {
+            if (handler.getHandler().equals(name)) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package org.folio.rest.impl;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Header;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.PomReader;
+import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+@RunWith(VertxUnitRunner.class)
+public class OrioleAdminImplTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrioleAdminImplTest.class);
+    private static Vertx vertx;
+    private static Async async;
+    private static String moduleId;
+
+    private static final String TENANT = "test";
+    private final Header TENANT_HEADER = new Header("X-Okapi-Tenant", TENANT);
+    private final Header CONTENT_TYPE_HEADER = new Header("Content-Type", "application/json");
+    private final Header ACCEPT_HEADER = new Header("Accept", "application/json");
+
+    @Before
+    public void setUp(TestContext context) {
+        Locale.setDefault(Locale.US);
+        vertx = Vertx.vertx();
+        String moduleName = PomReader.INSTANCE.getModuleName().replaceAll("_", "-");
+        String moduleVersion = PomReader.INSTANCE.getVersion();
+        moduleId = moduleName + "-" + moduleVersion;
+        LOGGER.info("Test setup starting for " + moduleId);
+        try {
+            PostgresClient.setIsEmbedded(true);
+            PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+        } catch (IOException e) {
+            e.printStackTrace();
+            context.fail(e);
+            return;
+        }
+        int port = NetworkUtils.nextFreePort();
+        DeploymentOptions options = new DeploymentOptions().setConfig(
+                new JsonObject().put("http.port", port).put(HttpClientMock2.MOCK_MODE, "true"));
+        vertx.deployVerticle(RestVerticle.class.getName(), options, context.asyncAssertSuccess());
+        RestAssured.port = port;
+        LOGGER.info("oriole admin test: setup done. Using port " + port);
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        async = context.async();
+        vertx.close(context.asyncAssertSuccess(res -> {
+            PostgresClient.stopEmbeddedPostgres();
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testModuleRunning() {
+        // see if the module is running and we can talk to it
+        given().get("/admin/health").then().log().all().statusCode(200);
+    }
+
+    @Test
+    public void testWarmUpOnTenantEnable() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant; the response only comes back once the tenant is warmed up
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/warmup")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"ready\" : true"))
+                .body(containsString("\"tenant\" : \"test\""))
+                .body(containsString("\"status\" : \"done\""))
+                .body(containsString("\"durationMs\""));
+    }
+
+    @Test
+    public void testEzproxyPublisherStatus() {
+        // no oriole.ezproxy.publish.path in the test run, so the publisher is off and has done nothing
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/ezproxy-publisher")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"enabled\" : false"))
+                .body(containsString("\"regenerations\" : 0"))
+                .body(containsString("\"skipped\" : 0"));
+    }
+
+    @Test
+    public void testAdmissionStatus() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200);
+        // the defaults are far above what a single test client sends
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/admission")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"enabled\" : true"))
+                .body(containsString("\"endpointClass\" : \"search\""))
+                .body(containsString("\"inFlight\" : 0"))
+                .body(containsString("\"rejectedRate\" : 0"))
+                .body(containsString("\"rejectedBusy\" : 0"));
+    }
+
+    @Test
+    public void testExplain() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "title=chemistry")
+                .queryParam("facets", "tags.tagList[]:10")
+                .get("/oriole-admin/explain")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"query\" : \"title=chemistry\""))
+                .body(containsString("\"name\" : \"fetch\""))
+                .body(containsString("\"name\" : \"count\""))
+                .body(containsString("\"name\" : \"facet:tags.tagList[]:10\""))
+                .body(containsString("jsonb_array_elements_text"))
+                .body(containsString("Execution Time"))
+                .body(not(containsString("\"error\"")));
+        given().header(TENANT_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .queryParam("query", "nosuchfield=1")
+                .get("/oriole-admin/explain")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testEventLoopStats() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/oriole-admin/event-loop")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/event-loop")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"enabled\" : true"))
+                .body(containsString("\"bucketsMs\""))
+                .body(containsString("\"handler\" : \"getOrioleResources\""))
+                .body(containsString("\"histogram\""));
+        given().header(TENANT_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/oriole-admin/event-loop")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole-admin/event-loop")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(not(containsString("getOrioleResources")));
+    }
+
+    @Test
+    public void testSortedPageStopsAfterItsRows(TestContext context) {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        // enough resources that reading a page off the index beats sorting them all
+        Async seeded = context.async();
+        PostgresClient.getInstance(vertx).execute("INSERT INTO test_mod_oriole.resource (id, jsonb)"
+                + " SELECT md5(i::text)::uuid, jsonb_build_object('id', md5(i::text)::uuid,"
+                + " 'title', 'Title ' || i, 'url', 'https://example.com/' || i)"
+                + " FROM generate_series(1, 20000) i", context.asyncAssertSuccess(inserted ->
+                PostgresClient.getInstance(vertx).execute("ANALYZE test_mod_oriole.resource",
+                        context.asyncAssertSuccess(analyzed -> seeded.complete()))));
+        seeded.awaitSuccess(120000);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "cql.allRecords=1 sortBy title")
+                .get("/oriole-admin/explain")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("count_matches"))
+                .body(containsString("Index Scan using resource_title_sort_idx"))
+                .body(not(containsString("WindowAgg")))
+                .body(not(containsString("\"error\"")));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "cql.allRecords=1 sortBy title")
+                .get("/oriole/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(not(containsString("\"totalRecords\" : 0")));
+    }
+
+    @Test
+    public void testGuardedStatementsTimeOutWith503(TestContext context) {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        System.setProperty("oriole.query.timeout.test.ms", "200");
+        try {
+            Map<String, String> okapiHeaders = new HashMap<>();
+            okapiHeaders.put(RestVerticle.OKAPI_HEADER_TENANT, TENANT);
+            Context vertxContext = vertx.getOrCreateContext();
+            Async slept = context.async();
+            long start = System.currentTimeMillis();
+            vertxContext.runOnContext(v -> ReadRouting.select(okapiHeaders, vertxContext, "test",
+                    "SELECT pg_sleep(5)", null, reply -> {
+                        context.assertTrue(reply.failed());
+                        context.assertTrue(System.currentTimeMillis() - start < 4000);
+                        QueryGuard.handleError(reply.cause(), "test", res -> {
+                            context.assertEquals(503, res.result().getStatus());
+                            slept.complete();
+                        });
+                    }));
+            slept.awaitSuccess(10000);
+            // the transaction is read-only
+            Async wrote = context.async();
+            vertxContext.runOnContext(v -> ReadRouting.select(okapiHeaders, vertxContext, "test",
+                    "CREATE TABLE guarded (id int)", null, reply -> {
+                        context.assertTrue(reply.failed());
+                        context.assertTrue(reply.cause().getMessage().contains("read-only"));
+                        wrote.complete();
+                    }));
+            wrote.awaitSuccess(10000);
+        } finally {
+            System.clearProperty("oriole.query.timeout.test.ms");
+        }
+    }
+}
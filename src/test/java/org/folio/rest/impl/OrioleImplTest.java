@@ -4,6 +4,7 @@ import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Header;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -22,9 +23,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.jayway.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(VertxUnitRunner.class)
 public class OrioleImplTest {
@@ -394,6 +399,44 @@ public class OrioleImplTest {
                 .then()
                 .log().ifValidationFails()
                 .statusCode(400);
+        // get a resource by altId
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(resource.replace("11111111-1111-1111-a111-111111111111", "22222222-2222-2222-a222-222222222222")
+                        .replace("\"title\" : \"PubMed\",", "\"title\" : \"Embase\", \"altId\" : \"JHU01234\","))
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources/JHU01234")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("Embase"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources/JHU09999")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(404);
+        // more than the item concurrency: each answers and frees its admission slot
+        for (int i = 0; i < 20; i++) {
+            given().header(TENANT_HEADER)
+                    .get("/oriole/resources/_self")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(404);
+        }
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources/JHU01234")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200);
     }
 
     @Test
@@ -535,6 +578,328 @@ public class OrioleImplTest {
                 .statusCode(204);
     }
 
+    @Test
+    public void testPatch() throws Exception {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(resource)
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String path = "/oriole/resources/11111111-1111-1111-a111-111111111111";
+
+        // a non-text member only: keywords are kept
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"proxy\" : true}")
+                .patch(path)
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"proxy\" : true"))
+                .body(containsString("MEDLINE"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=keywords=medline")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+
+        // removing the description drops its words from the keywords
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"description\" : null, \"publisher\" : \"National Library of Medicine\"}")
+                .patch(path)
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(not(containsString("MEDLINE")))
+                .body(containsString("\"proxy\" : true"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=keywords=medline")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=keywords=medicine")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+
+        // keywords are rebuilt from the resource, not from the keywords stored before
+        String keywords = keywords("11111111-1111-1111-a111-111111111111");
+        assertTrue(keywords, !keywords.contains("MEDLINE"));
+        for (String publisher : new String[] {"NLM", "National Library of Medicine"}) {
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body(new JsonObject().put("publisher", publisher).encode())
+                    .patch(path)
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200);
+        }
+        assertEquals(keywords, keywords("11111111-1111-1111-a111-111111111111"));
+
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"id\" : \"22222222-2222-2222-a222-222222222222\"}")
+                .patch(path)
+                .then()
+                .log().ifValidationFails()
+                .statusCode(422)
+                .body(containsString("Can not change Id"));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"title\" : null}")
+                .patch(path)
+                .then()
+                .log().ifValidationFails()
+                .statusCode(422);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"proxy\" : false}")
+                .patch("/oriole/resources/33333333-3333-3333-a333-333333333333")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(404);
+    }
+
+    @Test
+    public void testBulkUpdateAndDelete() throws Exception {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String[] publishers = {"Ovid", "Ovid", "EBSCO"};
+        for (int i = 0; i < publishers.length; i++) {
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body(new JsonObject().put("title", "Database " + i).put("url", "https://example.org/" + i)
+                            .put("publisher", publishers[i]).encode())
+                    .post("/oriole/resources")
+                    .then()
+                    .log()
+                    .ifValidationFails()
+                    .statusCode(CREATED);
+        }
+        String update = new JsonObject()
+                .put("query", "publisher==Ovid")
+                .put("patch", new JsonObject().put("proxy", true).put("availability", new JsonArray().add("welch")))
+                .put("addTags", new JsonArray().add("ovid"))
+                .encode();
+
+        // a dry run reports the matches and changes nothing
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject(update).put("dryRun", true).encode())
+                .post("/oriole/resource-bulk/update")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"affected\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=tags.tagList=ovid")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(update)
+                .post("/oriole/resource-bulk/update")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"affected\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=tags.tagList=ovid and proxy==true")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"))
+                .body(containsString("welch"));
+        // availability== is answered by the containment the GIN index serves; = still ignores case
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=availability==welch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=availability=Welch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/databases?query=availability==welch and publisher==Ovid sortBy title")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"));
+        // resources already changed are not written again
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(update)
+                .post("/oriole/resource-bulk/update")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"affected\" : 0"));
+
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("query", "publisher==Ovid").put("patch", new JsonObject().putNull("title"))
+                        .encode())
+                .post("/oriole/resource-bulk/update")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(422);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("query", "publisher==(").encode())
+                .post("/oriole/resource-bulk/delete")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(400);
+
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("query", "tags.tagList=ovid").encode())
+                .post("/oriole/resource-bulk/delete")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"affected\" : 2"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"))
+                .body(containsString("EBSCO"));
+
+        // a '?' inside a CQL string is not taken for a parameter
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("title", "Who's Who?").put("url", "https://example.org/who").encode())
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject()
+                        .put("query", "title=\"Who's Who?\"")
+                        .put("patch", new JsonObject().put("publisher", "Marquis?"))
+                        .put("addTags", new JsonArray().add("who's?"))
+                        .encode())
+                .post("/oriole/resource-bulk/update")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"affected\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=publisher==Marquis*")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"))
+                .body(containsString("who's?"));
+
+        // a bulk text change replaces the words of the keywords instead of adding to them
+        String who = given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=title=\"Who's Who?\"")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .extract().path("resources[0].id");
+        String before = keywords(who);
+        for (String publisher : new String[] {"Crown", "Marquis?"}) {
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body(new JsonObject()
+                            .put("query", "title=\"Who's Who?\"")
+                            .put("patch", new JsonObject().put("publisher", publisher))
+                            .encode())
+                    .post("/oriole/resource-bulk/update")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body(containsString("\"affected\" : 1"));
+        }
+        assertEquals(before, keywords(who));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=keywords=crown")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+    }
+
     @Test
     public void testGoodQuery() {
         // drop tenant if it exists
@@ -704,6 +1069,36 @@ public class OrioleImplTest {
                 .body(containsString("facetValues"))
                 .body(containsString("\"count\" : 1"))
                 .body(containsString("\"value\" : \"Video recordings\""));
+        // subject terms are looked up in the resource_subject join table
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=terms.subject.term=\"video recordings\" and title=PubMed")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=terms.subject.fastId==fst00000000")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+        // = matches words of the term, == the whole term
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=terms.subject.term=Recordings")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources?query=terms.subject.term==recordings")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
 
         // Facet search
 //        String query = "*\\\"facet\\\": \\\"Form\\\"*";
@@ -731,5 +1126,367 @@ public class OrioleImplTest {
 //                .statusCode(200)
 //                .body(containsString("\"totalRecords\" : 1"));
     }
-}
 
+    @Test
+    public void testResourcesForSubject() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String subject = "{\"id\": \"5711b80f-9e72-4d5c-9414-e98b454d61fa\", \"fastId\": \"fst01692913\", "
+                + "\"term\": \"Video recordings\", \"uri\": \"http://id.worldcat.org/fast/1692913\", \"facet\": \"Form\"}";
+        String resource = "{"
+                + "\"id\" : \"11111111-1111-1111-a111-111111111111\"," + LS
+                + "\"title\" : \"PubMed\"," + LS
+                + "\"url\" : \"https://www.ncbi.nlm.nih.gov/pubmed/\"," + LS
+                + "\"terms\" : [{\"subject\": " + subject + ", \"category\": \"none\", \"score\": 1}]}" + LS;
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(subject)
+                .post("/oriole/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(resource)
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        // the join table is filled by the resource write
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects/5711b80f-9e72-4d5c-9414-e98b454d61fa/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("PubMed"))
+                .body(containsString("\"totalRecords\" : 1"));
+        // unknown subject
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects/99111111-1111-1111-a111-111111111199/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(404);
+        // deleting the resource removes its subject rows
+        given().header(TENANT_HEADER)
+                .delete("/oriole/resources/11111111-1111-1111-a111-111111111111")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects/5711b80f-9e72-4d5c-9414-e98b454d61fa/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+    }
+
+    @Test
+    public void testSubjectBrowseCounts() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String terms = "\"terms\" : [{\"subject\": {\"id\": \"5711b80f-9e72-4d5c-9414-e98b454d61fa\", "
+                + "\"fastId\": \"fst01692913\", \"term\": \"Video recordings\", "
+                + "\"uri\": \"http://id.worldcat.org/fast/1692913\", \"facet\": \"Form\"}, \"score\": 2}]";
+        String[] ids = {"11111111-1111-1111-a111-111111111111", "22222222-2222-2222-a222-222222222222"};
+        for (String id : ids) {
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body("{\"id\" : \"" + id + "\", \"title\" : \"PubMed\", "
+                            + "\"url\" : \"https://www.ncbi.nlm.nih.gov/pubmed/\", " + terms + "}")
+                    .post("/oriole/resources")
+                    .then()
+                    .log()
+                    .ifValidationFails()
+                    .statusCode(201);
+        }
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/browse/subjects?facet=Form")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"term\" : \"Video recordings\""))
+                .body(containsString("\"resourceCount\" : 2"))
+                .body(containsString("\"averageScore\" : 2.0"));
+        // the count follows deletes
+        given().header(TENANT_HEADER)
+                .delete("/oriole/resources/" + ids[0])
+                .then()
+                .log().ifValidationFails()
+                .statusCode(204);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/browse/subjects?orderBy=term")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"resourceCount\" : 1"));
+        // other facets are filtered out
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/browse/subjects?facet=Topical")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 0"));
+    }
+
+    @Test
+    public void testPrivateRestrictionsHidden() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String restricted = "{"
+                + "\"id\" : \"11111111-1111-1111-a111-111111111111\"," + LS
+                + "\"title\" : \"PubMed\"," + LS
+                + "\"url\" : \"https://www.ncbi.nlm.nih.gov/pubmed/\"," + LS
+                + "\"accessRestrictions\" : [" + LS
+                + "{\"type\" : \"Note\", \"content\" : \"Campus only\", \"private\" : false}," + LS
+                + "{\"type\" : \"Password\", \"content\" : \"s3cret\", \"private\" : true}]}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(restricted)
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        // the public list never carries private restrictions or keywords
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("Campus only"))
+                .body(not(containsString("s3cret")))
+                .body(not(containsString("\"keywords\"")));
+        // the staff list keeps them
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/resources")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("s3cret"))
+                .body(not(containsString("\"keywords\"")));
+    }
+
+    @Test
+    public void testSortByTitleIgnoresArticlesCaseAndAccents() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String[] titles = {"The Zoological Record", "Éducation Source", "apa PsycInfo", "\"Bibliography\" of Asian Studies"};
+        for (String title : titles) {
+            given().header(TENANT_HEADER)
+                    .header(CONTENT_TYPE_HEADER)
+                    .header(ACCEPT_HEADER)
+                    .body(new JsonObject().put("title", title).put("url", "https://example.org/").encode())
+                    .post("/oriole/resources")
+                    .then()
+                    .log()
+                    .ifValidationFails()
+                    .statusCode(CREATED);
+        }
+        String body = given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("query", "cql.allRecords=1 sortBy title")
+                .get("/oriole/databases")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .extract().body().asString();
+        int apa = body.indexOf("apa PsycInfo");
+        int bibliography = body.indexOf("Bibliography");
+        int education = body.indexOf("Éducation Source");
+        int zoological = body.indexOf("The Zoological Record");
+        assertTrue(body, apa >= 0 && apa < bibliography && bibliography < education && education < zoological);
+    }
+
+    @Test
+    public void testResourceBatch() {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .body(TENANT_BODY)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String id = "11111111-1111-4111-8111-111111111111";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("id", id).put("title", "PubMed").put("url", "https://example.org/").encode())
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("altId", "JHU04567").put("title", "Embase").put("url", "https://example.org/")
+                        .encode())
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        String missing = "22222222-2222-4222-8222-222222222222";
+        String body = given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("ids", "JHU04567," + missing)
+                .queryParam("ids", id)
+                .get("/oriole/resource-batch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"))
+                .body(containsString(missing))
+                .extract().body().asString();
+        int embase = body.indexOf("Embase");
+        int pubmed = body.indexOf("PubMed");
+        assertTrue(body, embase >= 0 && embase < pubmed);
+
+        StringBuilder tooMany = new StringBuilder("JHU0");
+        for (int i = 1; i <= 100; i++) {
+            tooMany.append(",JHU").append(i);
+        }
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("ids", tooMany.toString())
+                .get("/oriole/resource-batch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(400);
+
+        // the public variant leaves out private access restrictions, as /oriole/databases does
+        String restricted = "33333333-3333-4333-8333-333333333333";
+        JsonArray restrictions = new JsonArray()
+                .add(new JsonObject().put("type", "note").put("content", "Off campus via VPN"))
+                .add(new JsonObject().put("type", "password").put("content", "s3cret").put("private", true));
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(new JsonObject().put("id", restricted).put("title", "Scopus").put("url", "https://example.org/")
+                        .put("accessRestrictions", restrictions).encode())
+                .post("/oriole/resources")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(CREATED);
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("ids", restricted + ",JHU04567")
+                .get("/oriole/database-batch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"))
+                .body(containsString("Off campus via VPN"))
+                .body(not(containsString("s3cret")));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .queryParam("ids", restricted)
+                .get("/oriole/resource-batch")
+                .then()
+                .log().ifValidationFails()
+                .statusCode(200)
+                .body(containsString("s3cret"));
+    }
+
+    /**
+     * The keywords the trigger stored for the resource; they never leave the database otherwise.
+     */
+    private static String keywords(String id) throws Exception {
+        CompletableFuture<String> keywords = new CompletableFuture<>();
+        PostgresClient.getInstance(vertx, TENANT).select(
+                "SELECT jsonb->>'keywords' FROM " + TENANT + "_mod_oriole.resource WHERE id = '" + id + "'", reply -> {
+            if (reply.failed()) {
+                keywords.completeExceptionally(reply.cause());
+            } else {
+                keywords.complete(reply.result().getResults().get(0).getString(0));
+            }
+        });
+        return keywords.get(10, TimeUnit.SECONDS);
+    }
+}
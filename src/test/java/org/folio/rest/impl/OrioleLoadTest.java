@@ -0,0 +1,359 @@
+package org.folio.rest.impl;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Header;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.PomReader;
+import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the deployed verticle against embedded Postgres. Seeds a catalog through the API,
+ * then drives concurrent searches, item fetches, updates, tag lists and EZProxy polls, and writes
+ * requests, errors, throughput and p50/p95/p99 latency per endpoint as JSON.
+ *
+ * Not part of the normal test run; use {@code mvn test -Pload-test}. Settings are system
+ * properties, e.g. {@code -Doriole.load.concurrency=32 -Doriole.load.duration=120}:
+ * <ul>
+ *   <li>oriole.load.resources - size of the seeded catalog (2000)</li>
+ *   <li>oriole.load.concurrency - requests in flight (16)</li>
+ *   <li>oriole.load.warmup - seconds of traffic before measuring (10)</li>
+ *   <li>oriole.load.duration - seconds measured (60)</li>
+ *   <li>oriole.load.mix - relative weights (search=60,item=20,write=10,ezproxy=5,tags=5)</li>
+ *   <li>oriole.load.report - output file (target/load-test/report.json)</li>
+ * </ul>
+ */
+public class OrioleLoadTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OrioleLoadTest.class);
+  private static final String TENANT = "loadtest";
+  private static final int RESOURCES = Integer.getInteger("oriole.load.resources", 2000);
+  private static final int CONCURRENCY = Integer.getInteger("oriole.load.concurrency", 16);
+  private static final int WARMUP_SECONDS = Integer.getInteger("oriole.load.warmup", 10);
+  private static final int DURATION_SECONDS = Integer.getInteger("oriole.load.duration", 60);
+  private static final String MIX = System.getProperty("oriole.load.mix", "search=60,item=20,write=10,ezproxy=5,tags=5");
+  private static final String REPORT = System.getProperty("oriole.load.report", "target/load-test/report.json");
+  private static final List<String> WORDS = Arrays.asList("medline", "chemistry", "history", "nursing", "physics",
+      "economics", "music", "law", "engineering", "psychology", "art", "genomics", "statistics", "philosophy");
+  private static final List<String> LIBRARIES = Arrays.asList("welch", "homewood", "peabody", "sais");
+
+  private static Vertx vertx;
+  private static HttpClient client;
+  private static int port;
+
+  private final Random random = new Random(42);
+  private final List<JsonObject> catalog = new ArrayList<>();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Locale.setDefault(Locale.US);
+    // measure the module itself, not the admission limits, unless asked to
+    System.setProperty("oriole.admission.enabled", System.getProperty("oriole.admission.enabled", "false"));
+    vertx = Vertx.vertx();
+    String moduleId = PomReader.INSTANCE.getModuleName().replaceAll("_", "-") + "-" + PomReader.INSTANCE.getVersion();
+    PostgresClient.setIsEmbedded(true);
+    PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+    port = NetworkUtils.nextFreePort();
+    DeploymentOptions options = new DeploymentOptions().setConfig(
+        new JsonObject().put("http.port", port).put(HttpClientMock2.MOCK_MODE, "true"));
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(RestVerticle.class.getName(), options, res -> {
+      if (res.succeeded()) {
+        deployed.complete(res.result());
+      } else {
+        deployed.completeExceptionally(res.cause());
+      }
+    });
+    deployed.get(2, TimeUnit.MINUTES);
+    RestAssured.port = port;
+    Header tenant = new Header("X-Okapi-Tenant", TENANT);
+    given().header(tenant).header(new Header("Accept", "text/plain"))
+        .delete("/_/tenant")
+        .then().statusCode(anyOf(is(204), is(400)));
+    given().header(tenant).header(new Header("Content-Type", "application/json"))
+        .body("{\"module_to\":\"" + moduleId + "\"}")
+        .post("/_/tenant")
+        .then().statusCode(201);
+    client = vertx.createHttpClient(new HttpClientOptions()
+        .setDefaultHost("localhost")
+        .setDefaultPort(port)
+        .setKeepAlive(true)
+        .setMaxPoolSize(CONCURRENCY));
+    LOGGER.info("Load test: module deployed on port " + port);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(res -> closed.complete(null));
+    closed.get(1, TimeUnit.MINUTES);
+    PostgresClient.stopEmbeddedPostgres();
+  }
+
+  @Test
+  public void runMixedLoad() throws Exception {
+    seed();
+    List<String> operations = new ArrayList<>();
+    Map<String, Recorder> recorders = new LinkedHashMap<>();
+    for (String part : MIX.split(",")) {
+      String[] kv = part.trim().split("=");
+      recorders.put(kv[0], new Recorder());
+      for (int i = 0; i < Integer.parseInt(kv[1]); i++) {
+        operations.add(kv[0]);
+      }
+    }
+    long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+    long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+    CountDownLatch workers = new CountDownLatch(CONCURRENCY);
+    // one context, so all workers run on the same event loop and the recorders need no locking;
+    // vertx.runOnContext from this thread would create a new context per call
+    Context context = vertx.getOrCreateContext();
+    for (int i = 0; i < CONCURRENCY; i++) {
+      context.runOnContext(v -> next(operations, recorders, measureFrom, stopAt, workers));
+    }
+    assertTrue("load did not finish", workers.await(WARMUP_SECONDS + DURATION_SECONDS + 120L, TimeUnit.SECONDS));
+
+    JsonObject report = report(recorders);
+    File file = new File(REPORT);
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    Files.write(file.toPath(), report.encodePrettily().getBytes(StandardCharsets.UTF_8));
+    LOGGER.info("Load test report written to " + file.getAbsolutePath() + System.lineSeparator()
+        + report.encodePrettily());
+    long total = 0;
+    for (Recorder r : recorders.values()) {
+      total += r.count();
+    }
+    assertTrue("no request completed", total > 0);
+  }
+
+  /**
+   * Creates the catalog through the API, CONCURRENCY requests at a time.
+   */
+  private void seed() throws Exception {
+    for (int n = 0; n < RESOURCES; n++) {
+      catalog.add(newResource(n));
+    }
+    AtomicInteger nextIndex = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    CountDownLatch seeders = new CountDownLatch(CONCURRENCY);
+    Context context = vertx.getOrCreateContext();
+    for (int i = 0; i < CONCURRENCY; i++) {
+      context.runOnContext(v -> seedNext(nextIndex, failures, seeders));
+    }
+    assertTrue("seeding did not finish", seeders.await(10, TimeUnit.MINUTES));
+    LOGGER.info("Seeded " + RESOURCES + " resources, " + failures.get() + " failed");
+  }
+
+  private void seedNext(AtomicInteger nextIndex, AtomicInteger failures, CountDownLatch seeders) {
+    int index = nextIndex.getAndIncrement();
+    if (index >= catalog.size()) {
+      seeders.countDown();
+      return;
+    }
+    send(HttpMethod.POST, "/oriole/resources", catalog.get(index).encode(), status -> {
+      if (status != 201) {
+        failures.incrementAndGet();
+      }
+      seedNext(nextIndex, failures, seeders);
+    });
+  }
+
+  private JsonObject newResource(int n) {
+    String subject = WORDS.get(random.nextInt(WORDS.size()));
+    String other = WORDS.get(random.nextInt(WORDS.size()));
+    JsonArray availability = new JsonArray();
+    if (random.nextInt(3) == 0) {
+      availability.add(LIBRARIES.get(random.nextInt(LIBRARIES.size())));
+    }
+    StringBuilder description = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      description.append(WORDS.get(random.nextInt(WORDS.size()))).append(' ');
+    }
+    return new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("altId", String.format("JHU%05d", n + 1))
+        .put("title", Character.toUpperCase(subject.charAt(0)) + subject.substring(1) + " " + other + " database " + n)
+        .put("url", "https://db" + n + ".example.org/search")
+        .put("publisher", "Publisher " + (n % 50))
+        .put("description", description.toString().trim())
+        .put("proxy", n % 3 == 0)
+        .put("availability", availability)
+        .put("tags", new JsonObject().put("tagList", new JsonArray().add(subject)))
+        .put("terms", new JsonArray().add(new JsonObject()
+            .put("subject", new JsonObject()
+                .put("id", UUID.nameUUIDFromBytes(subject.getBytes(StandardCharsets.UTF_8)).toString())
+                .put("fastId", "fst" + Math.abs(subject.hashCode()))
+                .put("term", subject)
+                .put("facet", "Topical")
+                .put("uri", "http://id.worldcat.org/fast/" + Math.abs(subject.hashCode())))
+            .put("category", "core")
+            .put("score", 1 + random.nextInt(3))));
+  }
+
+  private void next(List<String> operations, Map<String, Recorder> recorders, long measureFrom, long stopAt,
+                    CountDownLatch workers) {
+    long start = System.nanoTime();
+    if (start >= stopAt) {
+      workers.countDown();
+      return;
+    }
+    String operation = operations.get(random.nextInt(operations.size()));
+    JsonObject resource = catalog.get(random.nextInt(catalog.size()));
+    StatusHandler done = status -> {
+      long end = System.nanoTime();
+      if (start >= measureFrom) {
+        recorders.get(operation).record(end - start, status >= 200 && status < 300);
+      }
+      next(operations, recorders, measureFrom, stopAt, workers);
+    };
+    switch (operation) {
+      case "search":
+        send(HttpMethod.GET, "/oriole/databases?limit=10&query="
+            + encode("title=" + WORDS.get(random.nextInt(WORDS.size())) + "*"), null, done);
+        break;
+      case "item":
+        send(HttpMethod.GET, "/oriole/resources/" + resource.getString("id"), null, done);
+        break;
+      case "write":
+        JsonObject updated = resource.copy().put("description", resource.getString("description") + " updated");
+        send(HttpMethod.PUT, "/oriole/resources/" + resource.getString("id"), updated.encode(), done);
+        break;
+      case "ezproxy":
+        send(HttpMethod.GET, "/ezproxy", null, done);
+        break;
+      case "tags":
+        send(HttpMethod.GET, "/oriole/tags", null, done);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation in oriole.load.mix: " + operation);
+    }
+  }
+
+  private void send(HttpMethod method, String uri, String body, StatusHandler done) {
+    HttpClientRequest request = client.request(method, uri);
+    request.putHeader("X-Okapi-Tenant", TENANT);
+    request.putHeader("Accept", "application/json, text/plain");
+    request.handler(response -> response.bodyHandler(b -> done.handle(response.statusCode())));
+    request.exceptionHandler(e -> {
+      LOGGER.warn(method + " " + uri + " failed: " + e.getMessage());
+      done.handle(0);
+    });
+    if (body == null) {
+      request.end();
+    } else {
+      request.putHeader("Content-Type", "application/json");
+      request.end(Buffer.buffer(body));
+    }
+  }
+
+  private static JsonObject report(Map<String, Recorder> recorders) {
+    JsonObject endpoints = new JsonObject();
+    for (Map.Entry<String, Recorder> e : recorders.entrySet()) {
+      endpoints.put(e.getKey(), e.getValue().summary(DURATION_SECONDS));
+    }
+    return new JsonObject()
+        .put("resources", RESOURCES)
+        .put("concurrency", CONCURRENCY)
+        .put("warmupSeconds", WARMUP_SECONDS)
+        .put("durationSeconds", DURATION_SECONDS)
+        .put("mix", MIX)
+        .put("endpoints", endpoints);
+  }
+
+  private static String encode(String s) {
+    try {
+      return URLEncoder.encode(s, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface StatusHandler {
+    void handle(int status);
+  }
+
+  /**
+   * Latencies of one endpoint in nanoseconds. Only touched from the event loop of the workers'
+   * context, and read once they are done.
+   */
+  private static final class Recorder {
+    private long[] latencies = new long[1024];
+    private int size;
+    private int errors;
+
+    void record(long nanos, boolean ok) {
+      if (size == latencies.length) {
+        latencies = Arrays.copyOf(latencies, size * 2);
+      }
+      latencies[size++] = nanos;
+      if (!ok) {
+        errors++;
+      }
+    }
+
+    int count() {
+      return size;
+    }
+
+    JsonObject summary(int seconds) {
+      long[] sorted = Arrays.copyOf(latencies, size);
+      Arrays.sort(sorted);
+      return new JsonObject()
+          .put("requests", size)
+          .put("errors", errors)
+          .put("throughputPerSecond", seconds == 0 ? 0.0 : (double) size / seconds)
+          .put("p50Ms", percentile(sorted, 50))
+          .put("p95Ms", percentile(sorted, 95))
+          .put("p99Ms", percentile(sorted, 99))
+          .put("maxMs", size == 0 ? 0.0 : sorted[size - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, int p) {
+      if (sorted.length == 0) {
+        return 0.0;
+      }
+      int rank = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1e6;
+    }
+  }
+}
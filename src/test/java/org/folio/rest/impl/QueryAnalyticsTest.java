@@ -0,0 +1,91 @@
+package org.folio.rest.impl;
+
+import org.folio.rest.jaxrs.model.IndexRecommendation;
+import org.folio.rest.jaxrs.model.QueryStats;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryAnalyticsTest {
+
+    @Test
+    public void shapesHideTheTerms() throws Exception {
+        QueryAnalytics.Shape shape = QueryAnalytics.shape("title=chem* and tags.tagList==\"open access\" sortBy title");
+        assertEquals("(title=?* and tags.tagList==?) sortBy title", shape.text);
+        assertEquals(Arrays.asList("tags.tagList ==", "title =", "title sortBy"), Arrays.asList(
+                shape.uses.toArray(new String[0])));
+        assertEquals(shape.text, QueryAnalytics.shape("title=bio* and tags.tagList==x sortBy title").text);
+        assertEquals("keywords all ?", QueryAnalytics.shape("keywords all \"nursing history\"").text);
+        assertEquals("cql.allRecords", QueryAnalytics.shape("cql.allRecords=1").text);
+        assertEquals("", QueryAnalytics.shape(null).text);
+    }
+
+    @Test
+    public void countsShapesAndRecommendsMissingIndexes() {
+        String tenant = "analytics";
+        QueryAnalytics.reset(tenant);
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            QueryAnalytics.record(tenant, "resource", "publisher==p" + i, start);
+        }
+        for (int i = 0; i < 30; i++) {
+            QueryAnalytics.record(tenant, "resource", "title=t" + i + "*", start);
+        }
+        QueryAnalytics.record(tenant, "resource", "this is (not cql", start);
+        QueryStats stats = QueryAnalytics.stats(tenant, 10);
+        assertEquals(70, stats.getTotalQueries().intValue());
+        assertEquals(2, stats.getShapes().size());
+        assertEquals("publisher==?", stats.getShapes().get(0).getShape());
+        assertTrue(stats.getShapes().get(0).getCount() >= 40);
+        assertEquals("title=?*", stats.getShapes().get(1).getShape());
+        // title has a ginIndex in schema.json, publisher has no index at all
+        assertEquals(1, stats.getRecommendations().size());
+        IndexRecommendation recommendation = stats.getRecommendations().get(0);
+        assertEquals("publisher", recommendation.getField());
+        assertEquals("==", recommendation.getRelation());
+        assertEquals("index", recommendation.getSuggestedIndex());
+        assertEquals(40, recommendation.getCount().intValue());
+        QueryAnalytics.reset(tenant);
+        assertEquals(0, QueryAnalytics.stats(tenant, 10).getTotalQueries().intValue());
+    }
+
+    @Test
+    public void knowsTheIndexesOfTheSqlSnippets() {
+        String tenant = "analytics-snippets";
+        QueryAnalytics.reset(tenant);
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            QueryAnalytics.record(tenant, "resource", "availability==library" + i + " sortBy title", start);
+            QueryAnalytics.record(tenant, "resource", "terms.subject.fastId==fst" + i, start);
+        }
+        assertEquals(0, QueryAnalytics.stats(tenant, 10).getRecommendations().size());
+        // the word match of = is not served by the containment index
+        for (int i = 0; i < 40; i++) {
+            QueryAnalytics.record(tenant, "resource", "availability=library" + i, start);
+        }
+        assertEquals(1, QueryAnalytics.stats(tenant, 10).getRecommendations().size());
+        QueryAnalytics.reset(tenant);
+    }
+
+    @Test
+    public void keepsOnlyTheMostFrequentShapes() {
+        String tenant = "analytics-topk";
+        QueryAnalytics.reset(tenant);
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            QueryAnalytics.record(tenant, "resource", "title=x", start);
+        }
+        // more distinct shapes than the top-k holds, each seen once
+        StringBuilder query = new StringBuilder("a0=x");
+        for (int i = 1; i < 200; i++) {
+            query.append(" and a").append(i).append("=x");
+            QueryAnalytics.record(tenant, "resource", query.toString(), start);
+        }
+        QueryStats stats = QueryAnalytics.stats(tenant, 1000);
+        assertEquals(50, stats.getShapes().size());
+        assertEquals("title=?", stats.getShapes().get(0).getShape());
+    }
+}
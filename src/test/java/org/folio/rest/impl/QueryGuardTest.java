@@ -0,0 +1,95 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class QueryGuardTest {
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        System.setProperty("oriole.query.timeout.test.ms", "200");
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        System.clearProperty("oriole.query.timeout.test.ms");
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void timeoutsPerEndpoint() {
+        assertEquals(200, QueryGuard.timeoutMs("test"));
+        assertEquals(10000, QueryGuard.timeoutMs(QueryGuard.SEARCH));
+        assertEquals(60000, QueryGuard.timeoutMs(QueryGuard.EZPROXY));
+    }
+
+    @Test
+    public void recognizesTimeouts() {
+        assertTrue(QueryGuard.isTimeout(new RuntimeException(
+                "ErrorMessage(fields=Map(Severity -> ERROR, SQLSTATE -> 57014, "
+                        + "Message -> canceling statement due to statement timeout))")));
+        assertTrue(QueryGuard.isTimeout(new QueryGuard.TimeoutException(200)));
+        assertFalse(QueryGuard.isTimeout(new RuntimeException("relation \"resource\" does not exist")));
+    }
+
+    @Test
+    public void answersTimeoutsWith503(TestContext context) {
+        Async async = context.async();
+        QueryGuard.handleError(new QueryGuard.TimeoutException(200), "test", res -> {
+            Response response = res.result();
+            context.assertEquals(503, response.getStatus());
+            context.assertTrue(response.getEntity().toString().contains("200 ms"));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void deadlineFailsSlowCallsAndDropsTheirAnswer(TestContext context) {
+        Async async = context.async();
+        Context vertxContext = vertx.getOrCreateContext();
+        int[] answers = new int[1];
+        vertxContext.runOnContext(v -> QueryGuard.<String>deadline(vertxContext, "test",
+                h -> vertx.setTimer(500, id -> h.handle(Future.succeededFuture("late"))),
+                res -> {
+                    answers[0]++;
+                    context.assertTrue(res.failed());
+                    context.assertTrue(QueryGuard.isTimeout(res.cause()));
+                }));
+        vertx.setTimer(800, id -> {
+            context.assertEquals(1, answers[0]);
+            async.complete();
+        });
+    }
+
+    @Test
+    public void deadlinePassesTimelyAnswers(TestContext context) {
+        Async async = context.async();
+        Context vertxContext = vertx.getOrCreateContext();
+        Handler<AsyncResult<String>> handler = res -> {
+            context.assertTrue(res.succeeded());
+            context.assertEquals("ok", res.result());
+            async.complete();
+        };
+        vertxContext.runOnContext(v -> QueryGuard.<String>deadline(vertxContext, "test",
+                h -> h.handle(Future.succeededFuture("ok")), handler));
+    }
+}
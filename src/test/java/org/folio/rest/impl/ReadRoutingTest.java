@@ -0,0 +1,74 @@
+package org.folio.rest.impl;
+
+import org.folio.rest.RestVerticle;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadRoutingTest {
+
+    @Test
+    public void readsThePrimaryWithoutAReplica() {
+        ReadRouting.RecentWriters writers = new ReadRouting.RecentWriters(10000);
+        assertTrue(ReadRouting.usesPrimary(false, writers, headers("diku", null, null)));
+        assertTrue(ReadRouting.usesPrimary(false, writers, headers("diku", "u1", "t1")));
+        // the test run configures no replica
+        assertFalse(ReadRouting.replicaConfigured());
+        assertTrue(ReadRouting.usesPrimary(headers("diku", "u1", null)));
+    }
+
+    @Test
+    public void readsTheReplicaExceptWithinTheWriteWindow() throws Exception {
+        ReadRouting.RecentWriters writers = new ReadRouting.RecentWriters(300);
+        Map<String, String> writer = headers("diku", "u1", "t1");
+        assertFalse(ReadRouting.usesPrimary(true, writers, writer));
+        writers.record(writer);
+        assertTrue(ReadRouting.usesPrimary(true, writers, writer));
+        // other users and tenants still read the replica
+        assertFalse(ReadRouting.usesPrimary(true, writers, headers("diku", "u2", "t2")));
+        assertFalse(ReadRouting.usesPrimary(true, writers, headers("other", "u1", "t1")));
+        Thread.sleep(600);
+        assertFalse(ReadRouting.usesPrimary(true, writers, writer));
+    }
+
+    @Test
+    public void anonymousWritesDoNotMoveAnonymousReadsToThePrimary() {
+        ReadRouting.RecentWriters writers = new ReadRouting.RecentWriters(10000);
+        writers.record(headers("diku", null, null));
+        assertFalse(ReadRouting.usesPrimary(true, writers, headers("diku", null, null)));
+        // without a user id, the token identifies the client
+        writers.record(headers("diku", null, "t1"));
+        assertTrue(ReadRouting.usesPrimary(true, writers, headers("diku", null, "t1")));
+        assertFalse(ReadRouting.usesPrimary(true, writers, headers("diku", null, "t2")));
+        assertFalse(ReadRouting.usesPrimary(true, writers, headers("diku", null, null)));
+    }
+
+    @Test
+    public void keysWritersByUserThenToken() {
+        assertEquals("diku/user/u1", ReadRouting.writerKey(headers("diku", "u1", "t1")));
+        assertEquals("diku/token/t1", ReadRouting.writerKey(headers("diku", null, "t1")));
+        assertNull(ReadRouting.writerKey(headers("diku", null, null)));
+        Map<String, String> lowerCase = new HashMap<>();
+        lowerCase.put(RestVerticle.OKAPI_HEADER_TENANT, "diku");
+        lowerCase.put("x-okapi-user-id", "u1");
+        assertEquals("diku/user/u1", ReadRouting.writerKey(lowerCase));
+    }
+
+    private static Map<String, String> headers(String tenant, String userId, String token) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RestVerticle.OKAPI_HEADER_TENANT, tenant);
+        if (userId != null) {
+            headers.put("X-Okapi-User-Id", userId);
+        }
+        if (token != null) {
+            headers.put("X-Okapi-Token", token);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,78 @@
+package org.folio.rest.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceCQLWrapperTest {
+
+    private static String resourceSql(String query) throws Exception {
+        try (InputStream in = ResourceCQLWrapperTest.class.getClassLoader()
+                .getResourceAsStream("ramls/schemas/resource.json")) {
+            String schema = IOUtils.toString(in, StandardCharsets.UTF_8);
+            return ApiUtil.getResourceCQL(query, 10, 0, schema).toString();
+        }
+    }
+
+    @Test
+    public void translatesAvailabilityToContainment() throws Exception {
+        String sql = resourceSql("availability==welch");
+        assertTrue(sql, sql.contains("resource.jsonb->'availability' @> '[\"welch\"]'::jsonb AND ("));
+        String exact = resourceSql("title=chem* and availability==\"Welch Library\" sortBy title");
+        assertTrue(exact, exact.contains("@> '[\"Welch Library\"]'::jsonb AND ("));
+        assertTrue(exact, exact.contains("'title'"));
+        assertTrue(exact, exact.contains("ORDER BY resource.title_sort"));
+    }
+
+    @Test
+    public void looksSubjectsUpInTheJoinTable() throws Exception {
+        String sql = resourceSql("terms.subject.term==\"Public health\" and tags.tagList=medicine");
+        assertTrue(sql, sql.contains("resource.id IN (SELECT resource_id FROM resource_subject"
+                + " WHERE lower(term) = lower('Public health')) AND ("));
+        assertFalse(sql, sql.contains("'terms'"));
+        // = is a match of each word, as CQL2PgJSON has it
+        String words = resourceSql("terms.subject.term=\"public health\"");
+        assertTrue(words, words.contains("WHERE f_unaccent(term) ~* f_unaccent('(^|[^[:alnum:]])public($|[^[:alnum:]])')"
+                + " AND f_unaccent(term) ~* f_unaccent('(^|[^[:alnum:]])health($|[^[:alnum:]])'))"));
+        assertTrue(resourceSql("terms.subject.term=c++").contains("c\\+\\+"));
+        assertTrue(resourceSql("terms.subject.fastId==fst00798293").contains("fast_id = 'fst00798293'"));
+        assertFalse(resourceSql("terms.subject.term=\"Public*\"").contains("resource_subject"));
+    }
+
+    @Test
+    public void buildsTheStatementFromItsParts() throws Exception {
+        String sql = resourceSql("availability==welch and title=chem* sortBy title");
+        assertTrue(sql, sql.startsWith(" WHERE resource.jsonb->'availability' @> '[\"welch\"]'::jsonb AND ("));
+        assertTrue(sql, sql.contains(") ORDER BY resource.title_sort"));
+        assertTrue(sql, sql.endsWith("LIMIT 10 OFFSET 0"));
+        assertFalse(sql, resourceSql("availability==welch").contains("ORDER BY"));
+    }
+
+    @Test
+    public void leavesOtherTermsToTheTranslator() throws Exception {
+        assertFalse(resourceSql("availability=wel*").contains("@>"));
+        // = is a word match that ignores case, not an element of the list
+        assertFalse(resourceSql("availability=Welch").contains("@>"));
+        assertFalse(resourceSql("title=welch or availability=welch").contains("@>"));
+        assertFalse(resourceSql("title=welch").contains("@>"));
+    }
+
+    @Test
+    public void splitsTopLevelConjuncts() {
+        ResourceCQLWrapper.Split split = ResourceCQLWrapper.split("availability==welch and (title=a or title=b)");
+        assertEquals("resource.jsonb->'availability' @> '[\"welch\"]'::jsonb", split.conditions);
+        assertFalse(split.rest, split.rest.contains("availability"));
+        split = ResourceCQLWrapper.split("availability==\"it's\" sortBy title");
+        assertEquals("resource.jsonb->'availability' @> '[\"it''s\"]'::jsonb", split.conditions);
+        assertEquals("cql.allRecords=1 sortBy title", split.rest);
+        split = ResourceCQLWrapper.split("title=a");
+        assertEquals("title=a", split.rest);
+        assertEquals("", split.conditions);
+    }
+}
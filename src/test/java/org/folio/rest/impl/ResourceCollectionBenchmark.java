@@ -0,0 +1,63 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.json.Json;
+import org.folio.rest.jaxrs.model.Resource;
+import org.folio.rest.jaxrs.model.ResourceCollection;
+import org.folio.rest.jaxrs.model.ResultInfo;
+import org.folio.rest.persist.interfaces.Results;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The part of a search that runs after the database replied: copying the rows into a
+ * {@link ResourceCollection} and serializing it, for typical page sizes of large entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceCollectionBenchmark {
+
+  @Param({"10", "100"})
+  public int pageSize;
+
+  private Results<Resource> results;
+  private ResourceCollection collection;
+
+  @Setup
+  public void setUp() {
+    List<Resource> rows = new ArrayList<>(pageSize);
+    for (int i = 0; i < pageSize; i++) {
+      rows.add(Json.decodeValue(ResourceJsonBenchmark.sampleResource(i, true).encode(), Resource.class));
+    }
+    results = new Results<>();
+    results.setResults(rows);
+    results.setResultInfo(new ResultInfo().withTotalRecords(pageSize * 25));
+    collection = OrioleImpl.toResourceCollection(results);
+  }
+
+  @Benchmark
+  public ResourceCollection postProcess() {
+    return OrioleImpl.toResourceCollection(results);
+  }
+
+  @Benchmark
+  public String serialize() {
+    return Json.encode(collection);
+  }
+}
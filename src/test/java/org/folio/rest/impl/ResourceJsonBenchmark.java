@@ -0,0 +1,104 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of a resource row (jsonb text) to {@link Resource} and back, as done for every row of
+ * a search and every response. "small" is a bare catalog entry, "large" one of the biggest
+ * entries in production: long description, many subjects, identifiers and restrictions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceJsonBenchmark {
+
+  @Param({"small", "large"})
+  public String size;
+
+  private String json;
+  private Resource resource;
+
+  @Setup
+  public void setUp() {
+    json = sampleResource(0, "large".equals(size)).encode();
+    resource = Json.decodeValue(json, Resource.class);
+  }
+
+  @Benchmark
+  public Resource decode() {
+    return Json.decodeValue(json, Resource.class);
+  }
+
+  @Benchmark
+  public String encode() {
+    return Json.encode(resource);
+  }
+
+  static JsonObject sampleResource(int n, boolean large) {
+    JsonObject resource = new JsonObject()
+        .put("id", String.format("00000000-0000-4000-8000-%012d", n))
+        .put("altId", String.format("JHU%05d", n + 1))
+        .put("title", "Medline database " + n)
+        .put("url", "https://db" + n + ".example.org/search")
+        .put("proxy", true)
+        .put("availability", new JsonArray().add("welch"))
+        .put("tags", new JsonObject().put("tagList", new JsonArray().add("medicine")));
+    if (!large) {
+      return resource;
+    }
+    StringBuilder description = new StringBuilder();
+    while (description.length() < 2000) {
+      description.append("Citations and abstracts from biomedical journals in medicine, nursing and dentistry. ");
+    }
+    JsonArray terms = new JsonArray();
+    for (int i = 0; i < 20; i++) {
+      terms.add(new JsonObject()
+          .put("subject", new JsonObject()
+              .put("id", String.format("00000000-0000-4000-9000-%012d", i))
+              .put("fastId", "fst0" + (1000000 + i))
+              .put("term", "Subject term " + i)
+              .put("facet", i % 2 == 0 ? "Topical" : "Geographic")
+              .put("uri", "http://id.worldcat.org/fast/" + (1000000 + i)))
+          .put("category", i < 5 ? "core" : "related")
+          .put("score", 1 + i % 3));
+    }
+    JsonArray identifiers = new JsonArray();
+    for (int i = 0; i < 4; i++) {
+      identifiers.add(new JsonObject().put("value", "1234-567" + i).put("type", i % 2 == 0 ? "ISSN" : "ISBN"));
+    }
+    JsonArray restrictions = new JsonArray()
+        .add(new JsonObject().put("type", "Concurrent Users").put("content", "Limited to 5 users").put("private", false))
+        .add(new JsonObject().put("type", "License").put("content", "Renewal due in June").put("private", true));
+    return resource
+        .put("altTitle", "PubMed " + n)
+        .put("publisher", "National Library of Medicine")
+        .put("creator", "NLM")
+        .put("provider", "Ovid")
+        .put("description", description.toString())
+        .put("note", "Off-campus access via EZProxy")
+        .put("identifier", identifiers)
+        .put("terms", terms)
+        .put("accessRestrictions", restrictions)
+        .put("availability", new JsonArray().add("welch").add("homewood").add("peabody"))
+        .put("tags", new JsonObject().put("tagList", new JsonArray().add("medicine").add("nursing").add("public health")));
+  }
+}
@@ -0,0 +1,108 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@RunWith(VertxUnitRunner.class)
+public class SingleFlightTest {
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    /** A query that answers with the number of times it ran, 100 ms after it was started. */
+    private Consumer<Handler<AsyncResult<Integer>>> slowQuery(AtomicInteger runs) {
+        return h -> {
+            int run = runs.incrementAndGet();
+            vertx.setTimer(100, id -> h.handle(Future.succeededFuture(run)));
+        };
+    }
+
+    @Test
+    public void concurrentCallsShareOneQuery(TestContext context) {
+        AtomicInteger runs = new AtomicInteger();
+        Async async = context.async(5);
+        Context vertxContext = vertx.getOrCreateContext();
+        vertxContext.runOnContext(v -> {
+            for (int i = 0; i < 5; i++) {
+                SingleFlight.<Integer>run("diku", "same", vertxContext, slowQuery(runs), res -> {
+                    context.assertTrue(res.succeeded());
+                    context.assertEquals(1, res.result());
+                    async.countDown();
+                });
+            }
+        });
+        async.awaitSuccess(5000);
+        context.assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void keysAndTenantsDoNotShare(TestContext context) {
+        AtomicInteger runs = new AtomicInteger();
+        Async async = context.async(3);
+        Context vertxContext = vertx.getOrCreateContext();
+        vertxContext.runOnContext(v -> {
+            SingleFlight.<Integer>run("diku", "a", vertxContext, slowQuery(runs), res -> async.countDown());
+            SingleFlight.<Integer>run("diku", "b", vertxContext, slowQuery(runs), res -> async.countDown());
+            SingleFlight.<Integer>run("other", "a", vertxContext, slowQuery(runs), res -> async.countDown());
+        });
+        async.awaitSuccess(5000);
+        context.assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void callsAfterAChangeDoNotJoin(TestContext context) {
+        AtomicInteger runs = new AtomicInteger();
+        Async async = context.async(2);
+        Context vertxContext = vertx.getOrCreateContext();
+        vertxContext.runOnContext(v -> {
+            SingleFlight.<Integer>run("diku", "same", vertxContext, slowQuery(runs), res -> {
+                context.assertEquals(1, res.result());
+                async.countDown();
+            });
+            SingleFlight.forget("diku");
+            SingleFlight.<Integer>run("diku", "same", vertxContext, slowQuery(runs), res -> {
+                context.assertEquals(2, res.result());
+                async.countDown();
+            });
+        });
+        async.awaitSuccess(5000);
+    }
+
+    @Test
+    public void failuresReachEveryCaller(TestContext context) {
+        Async async = context.async(2);
+        Context vertxContext = vertx.getOrCreateContext();
+        Consumer<Handler<AsyncResult<Integer>>> failing = h ->
+                vertx.setTimer(100, id -> h.handle(Future.failedFuture("boom")));
+        vertxContext.runOnContext(v -> {
+            for (int i = 0; i < 2; i++) {
+                SingleFlight.<Integer>run("diku", "failing", vertxContext, failing, res -> {
+                    context.assertTrue(res.failed());
+                    context.assertEquals("boom", res.cause().getMessage());
+                    async.countDown();
+                });
+            }
+        });
+    }
+}
@@ -5,10 +5,12 @@ import com.jayway.restassured.response.Header;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.folio.rest.RestVerticle;
+import org.folio.rest.jaxrs.model.SubjectRecord;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.tools.PomReader;
 import org.folio.rest.tools.client.test.HttpClientMock2;
@@ -27,6 +29,9 @@ import static com.jayway.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 @RunWith(VertxUnitRunner.class)
 public class SubjectsImplTest {
@@ -147,4 +152,206 @@ public class SubjectsImplTest {
                 .body(containsString("Aeronautics"))
                 .body(containsString("\"totalRecords\" : 1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatchUpsertIsIdempotent() {
+        // drop tenant if it exists
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        // add tenant
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        String batch = "{\"subjects\" : [" + LS
+                + "{\"fastId\" : \"fst00798293\", \"term\" : \"Aeronautics\", \"facet\" : \"Topical\"}," + LS
+                + "{\"fastId\" : \"fst01692913\", \"term\" : \"Video recordings\", \"facet\" : \"Form\"}" + LS
+                + "]}";
+        // first load creates both subjects
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(batch)
+                .post("/oriole/batch/subjects?batchSize=1")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"created\" : 2"));
+        // second load of the same vocabulary only updates
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(batch)
+                .post("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"updated\" : 2"));
+        // no duplicates were created
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"));
+    }
+
+    @Test
+    public void testReloadReplacesTheVocabulary(TestContext context) {
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(new Header("Accept", "text/plain"))
+                .delete("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(anyOf(is(204), is(400)));
+        String tenants = "{\"module_to\":\"" + moduleId + "\"}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(tenants)
+                .post("/_/tenant")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(201);
+        String batch = "{\"subjects\" : [" + LS
+                + "{\"fastId\" : \"fst00798293\", \"term\" : \"Aeronautics\", \"facet\" : \"Topical\"}," + LS
+                + "{\"fastId\" : \"fst01692913\", \"term\" : \"Video recordings\", \"facet\" : \"Form\"}" + LS
+                + "]}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(batch)
+                .post("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200);
+        String id = given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects?query=fastId=fst00798293")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .extract().path("subjects[0].id");
+
+        String reload = "{\"subjects\" : [" + LS
+                + "{\"fastId\" : \"fst00798293\", \"term\" : \"Aeronautics, Military\", \"facet\" : \"Topical\"}," + LS
+                + "{\"fastId\" : \"fst00812938\", \"term\" : \"Chemistry\", \"facet\" : \"Topical\"}," + LS
+                + "{\"fastId\" : \"fst00812938\", \"term\" : \"Chemistry\", \"facet\" : \"Topical\"}" + LS
+                + "]}";
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(reload)
+                .put("/oriole/batch/subjects?batchSize=1")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"loaded\" : 2"))
+                .body(containsString("\"skipped\" : 1"));
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"totalRecords\" : 2"))
+                .body(containsString("Chemistry"))
+                .body(not(containsString("Video recordings")));
+        // the subject kept its id
+        given().header(TENANT_HEADER)
+                .header(ACCEPT_HEADER)
+                .get("/oriole/subjects/" + id)
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("Aeronautics, Military"));
+        // the swapped-in table still has its fastId key for upserts
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(batch)
+                .post("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200)
+                .body(containsString("\"created\" : 1"))
+                .body(containsString("\"updated\" : 1"));
+
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body("{\"subjects\" : []}")
+                .put("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(400);
+
+        // a reload running elsewhere, on another module instance, holds the tenant's lock
+        Async locked = context.async();
+        SQLConnection[] holder = new SQLConnection[1];
+        PostgresClient.getInstance(vertx, TENANT).getClient().getConnection(context.asyncAssertSuccess(conn -> {
+            holder[0] = conn;
+            conn.query("SELECT pg_advisory_lock(hashtext('oriole.subject_reload'), hashtext(current_schema()))",
+                    context.asyncAssertSuccess(res -> locked.complete()));
+        }));
+        locked.awaitSuccess(10000);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(reload)
+                .put("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(409);
+        Async released = context.async();
+        // a session lock outlives the pooled connection's return to the pool
+        holder[0].query("SELECT pg_advisory_unlock(hashtext('oriole.subject_reload'), hashtext(current_schema()))",
+                context.asyncAssertSuccess(res -> holder[0].close(context.asyncAssertSuccess(v -> released.complete()))));
+        released.awaitSuccess(10000);
+        given().header(TENANT_HEADER)
+                .header(CONTENT_TYPE_HEADER)
+                .header(ACCEPT_HEADER)
+                .body(reload)
+                .put("/oriole/batch/subjects")
+                .then()
+                .log()
+                .ifValidationFails()
+                .statusCode(200);
+    }
+
+    @Test
+    public void testAbsentValuesAreNotStored() {
+        JsonObject jsonb = SubjectUpsert.jsonb("5711b80f-9e72-4d5c-9414-e98b454d61fa",
+                new SubjectRecord().withFastId("fst00798293").withTerm("Aeronautics"));
+        assertEquals("Aeronautics", jsonb.getString("term"));
+        assertFalse(jsonb.containsKey("facet"));
+        assertFalse(jsonb.containsKey("uri"));
+    }
+}
@@ -0,0 +1,48 @@
+package org.folio.rest.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TitleSortCQLWrapperTest {
+
+    private static String resourceSql(String query) throws Exception {
+        try (InputStream in = TitleSortCQLWrapperTest.class.getClassLoader()
+                .getResourceAsStream("ramls/schemas/resource.json")) {
+            String schema = IOUtils.toString(in, StandardCharsets.UTF_8);
+            return ApiUtil.getResourceCQL(query, 10, 0, schema).toString();
+        }
+    }
+
+    @Test
+    public void sortsTitleOnTheSortKey() throws Exception {
+        String sql = resourceSql("cql.allRecords=1 sortBy title");
+        assertTrue(sql, sql.contains("ORDER BY resource.title_sort"));
+        String descending = resourceSql("title=chem* sortBy title/sort.descending");
+        assertTrue(descending, descending.contains("ORDER BY resource.title_sort DESC"));
+        // the search on title itself keeps using the title expression
+        assertTrue(descending, descending.contains("'title'"));
+    }
+
+    @Test
+    public void leavesOtherSortsAlone() throws Exception {
+        String sql = resourceSql("cql.allRecords=1 sortBy altId");
+        assertFalse(sql, sql.contains("title_sort"));
+        assertFalse(resourceSql("title=chemistry").contains("title_sort"));
+    }
+
+    @Test
+    public void rewritesOnlyTheOrderBy() {
+        assertEquals("WHERE lower(f_unaccent(resource.jsonb->>'title')) LIKE 'a%' ORDER BY resource.title_sort DESC",
+                TitleSortCQLWrapper.withTitleSort("WHERE lower(f_unaccent(resource.jsonb->>'title')) LIKE 'a%'"
+                        + " ORDER BY lower(f_unaccent(resource.jsonb->>'title')) DESC"));
+        assertEquals("WHERE true ORDER BY resource.title_sort",
+                TitleSortCQLWrapper.withTitleSort("WHERE true ORDER BY left(lower(f_unaccent(resource.jsonb->>'title')),600)"));
+    }
+}